@@ -0,0 +1,175 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link JDBCUtils} operations on an executor and returns futures, so independent queries - the
+ * one-to-manys for a page, say - can be in flight together rather than one after another:
+ *
+ * <pre>
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; orders = async.getOneToMany(customer, Order.class);
+ * CompletableFuture&lt;List&lt;Address&gt;&gt; addresses = async.getOneToMany(customer, Address.class);
+ * CompletableFuture.allOf(orders, addresses).join();
+ * </pre>
+ *
+ * Each task runs with the calling thread's {@link ObjectCache}, so objects loaded by the tasks are cached in the
+ * caller's scope and shared between them.  Spring transactions are bound to threads and are not carried over,
+ * so each task runs outside the caller's transaction.
+ *
+ * By default tasks run on virtual threads where the JVM has them (Java 21 and later) and otherwise on a fixed
+ * pool of daemon threads.  Either way the connection pool is what limits the number of queries in flight.
+ */
+public class AsyncJDBCUtils implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncJDBCUtils.class);
+
+	private final JDBCUtils utils;
+	private final Executor executor;
+	private final ExecutorService owned;
+
+	/**
+	 * Runs tasks on virtual threads if available, otherwise on a pool of twice as many threads as processors
+	 */
+	public AsyncJDBCUtils(JDBCUtils utils) {
+		this.utils = utils;
+		this.owned = createExecutor(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+		this.executor = owned;
+	}
+
+	/**
+	 * Runs tasks on the given executor, which the caller remains responsible for shutting down
+	 */
+	public AsyncJDBCUtils(JDBCUtils utils, Executor executor) {
+		this.utils = utils;
+		this.executor = executor;
+		this.owned = null;
+	}
+
+	static ExecutorService createExecutor(int poolSize) {
+		try {
+			//Java 21 and later - looked up reflectively so the library still runs on Java 8
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.debug("Virtual threads not available, using a pool of " + poolSize);
+		}
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = r -> {
+			Thread thread = new Thread(r, "jdbcutils-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(poolSize, factory);
+	}
+
+	public JDBCUtils getUtils() {
+		return utils;
+	}
+
+	/**
+	 * Runs any operation asynchronously with the caller's {@link ObjectCache}
+	 */
+	public <R> CompletableFuture<R> supply(Function<JDBCUtils, R> operation) {
+		ObjectCache cache = ObjectCache.get();
+		return CompletableFuture.supplyAsync(() -> {
+			ObjectCache previous = ObjectCache.bind(cache);
+			try {
+				return operation.apply(utils);
+			} finally {
+				ObjectCache.bind(previous);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Runs any operation with no result asynchronously with the caller's {@link ObjectCache}
+	 */
+	public CompletableFuture<Void> run(Consumer<JDBCUtils> operation) {
+		return supply(utils -> {
+			operation.accept(utils);
+			return null;
+		});
+	}
+
+	public <T> CompletableFuture<T> get(Class<T> clazz, int id) {
+		return supply(utils -> utils.get(clazz, id));
+	}
+
+	public <T> CompletableFuture<Optional<T>> find(Class<T> clazz, Serializable id) {
+		return supply(utils -> utils.find(clazz, id));
+	}
+
+	public <T> CompletableFuture<Map<Serializable, T>> getMany(Class<T> clazz, Collection<?> ids) {
+		return supply(utils -> utils.getMany(clazz, ids));
+	}
+
+	public <T> CompletableFuture<List<T>> getAll(Class<T> clazz) {
+		return supply(utils -> utils.getAll(clazz));
+	}
+
+	public <T> CompletableFuture<List<T>> queryFor(Class<T> targetClass, Object ... constraints) {
+		return supply(utils -> utils.queryFor(targetClass, constraints));
+	}
+
+	public <T> CompletableFuture<List<T>> list(EntityQuery<T> query) {
+		return supply(utils -> query.list());
+	}
+
+	public <T> CompletableFuture<List<T>> getOneToMany(Object source, Class<T> targetClass) {
+		return supply(utils -> utils.getOneToMany(source, targetClass));
+	}
+
+	public <T> CompletableFuture<List<T>> getOneToMany(Object source, Class<T> targetClass, String mappedBy) {
+		return supply(utils -> utils.getOneToMany(source, targetClass, mappedBy));
+	}
+
+	public <T> CompletableFuture<T> getManyToOne(Object source, Class<T> targetClass) {
+		return supply(utils -> utils.getManyToOne(source, targetClass));
+	}
+
+	public <T> CompletableFuture<List<T>> getManyToMany(Object source, Class<T> targetClass) {
+		return supply(utils -> utils.getManyToMany(source, targetClass));
+	}
+
+	public CompletableFuture<Void> insert(Object o) {
+		return run(utils -> utils.insert(o));
+	}
+
+	public CompletableFuture<Void> update(Object o) {
+		return run(utils -> utils.update(o));
+	}
+
+	public CompletableFuture<Void> delete(Object o) {
+		return run(utils -> utils.delete(o));
+	}
+
+	/**
+	 * Shuts down the executor if it was created here, waiting briefly for running tasks
+	 */
+	@Override
+	public void close() {
+		if (owned != null) {
+			owned.shutdown();
+			try {
+				owned.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -1,144 +1,360 @@
-package com.jumbletree.jdbcutils;
-
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.util.Collection;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import javax.persistence.Column;
-
-import org.springframework.jdbc.core.RowMapper;
-
-public class BeanRowMapper<T> implements RowMapper<T> {
-
-	@FunctionalInterface
-	public static interface Handler<T> {
-		void handle(T t, Method setter, ResultSet rs, String column) throws Exception;
-	}
-	
-	protected Class<T> clazz;
-	private HashMap<String, Method> mappings = new HashMap<String, Method>();
-	private HashMap<String, Handler<T>> handlers = new HashMap<>();
-
-	/**
-	 * Subclassing constructor.
-	 * 
-	 * Calling classes MUST call init(JDBCUtils) explicitly.
-	 * 
-	 * @param clazz
-	 * @param utils
-	 */
-	protected BeanRowMapper(Class<T> clazz) {
-		this.clazz = clazz;
-	}
-	
-	public BeanRowMapper(Class<T> clazz, JDBCUtils utils) {
-		this.clazz = clazz;
-		init(utils);
-	}
-
-	protected void init(JDBCUtils utils) {
-		for (Field field : utils.getAllFields(clazz)) {
-			Column col = field.getAnnotation(Column.class);
-			if (col != null) {
-				Method setter = utils.getSetter(field);
-				if (setter == null) {
-					//Configuration error - has been logged
-					continue;
-				}
-
-				//Now work out the function
-				Class<?> type = setter.getParameterTypes()[0];
-				Handler<T> handler = getExtensionHandler(field);
-				if (handler == null) {
-					if (type.equals(String.class)) {
-						handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getString(column));
-					//Consider java.util.Date to be a timestamp because this is common usage
-					} else if (type.equals(Timestamp.class) || type.equals(Date.class)) {
-						handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getTimestamp(column));
-					//But java.sql.Date to be a date
-					} else if (Date.class.isAssignableFrom(type)) {
-						handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getDate(column));
-					} else if (type.isEnum()) {
-						handler = (t, theMethod, rs, column) -> theMethod.invoke(t, type.getMethod("valueOf", String.class).invoke(null,  rs.getString(column)));
-					} else {
-						if (type.equals(Integer.class) || type.equals(int.class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getInt(column));
-						} else if (type.equals(Float.class) || type.equals(float.class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getFloat(column));
-						} else if (type.equals(Double.class) || type.equals(double.class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getDouble(column));
-						} else if (type.equals(BigDecimal.class)) {
-                                                        handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getBigDecimal(column));
-                                                } else if (type.equals(Boolean.class) || type.equals(boolean.class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getBoolean(column));
-						} else if (type.equals(Byte[].class) || type.equals(byte[].class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getBytes(column));
-						} else if (type.equals(Long.class) || type.equals(long.class)) {
-							handler = (t, theMethod, rs, column) -> theMethod.invoke(t, rs.getLong(column));
-						}
-					}
-				}
-
-				if (handler == null) {
-					throw new IllegalArgumentException("No handler found for type " + type.getName());
-				}
-				String name = col.name() == null || col.name().length() == 0 ? field.getName() : col.name();
-				
-				mappings.put(name, setter);
-				handlers.put(name, handler);
-			}
-		}
-	}
-
-	/** 
-	 * Subclasses can implement specific type handling here
-	 * @param type the type that is being handled
-	 */
-	protected Handler<T> getExtensionHandler(Field type) {
-		return null;
-	}
-
-	@Override
-	public T mapRow(ResultSet rs, int row) throws SQLException {
-		try {
-			T t = clazz.newInstance();
-			
-			//Allow ordering in case marshalling requires it
-			Collection<String> keys = setMappingOrder(mappings.keySet());
-			
-			for (String key : keys) {
-				Method theMethod = mappings.get(key);
-
-				Handler<T> handler = handlers.get(key);
-				handler.handle(t, theMethod, rs, key);
-				//Override for nulls...
-				if (rs.wasNull()) try {
-					theMethod.invoke(t, new Object[] {null});
-				} catch (Exception e) {
-					//Was a primitive, so leave as is.
-				}
-			}
-			return t;
-		} catch (Exception e) {
-			System.out.println("**** Got an error");
-			e.printStackTrace();
-			Logger.getGlobal().log(Level.SEVERE, e.getMessage(), e);
-			throw new SQLException(e);
-		}
-		
-	}
-
-	protected Collection<String> setMappingOrder(Collection<String> fields) {
-		return fields;
-	}
-}
+package com.jumbletree.jdbcutils;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.jumbletree.jdbcutils.PropertyAccessors.BooleanSetter;
+import com.jumbletree.jdbcutils.PropertyAccessors.DoubleSetter;
+import com.jumbletree.jdbcutils.PropertyAccessors.FloatSetter;
+import com.jumbletree.jdbcutils.PropertyAccessors.IntSetter;
+import com.jumbletree.jdbcutils.PropertyAccessors.LongSetter;
+
+public class BeanRowMapper<T> implements RowMapper<T> {
+
+	/**
+	 * Reads one column into one property.  Handlers are given the property's setter and the column's index, 
+	 * which is resolved once per result set shape.  Up to 1.0.4 they were given the setter Method and the column 
+	 * name instead, so extension handlers written against that form need <code>setter.invoke(t, v)</code> 
+	 * changed to <code>setter.set(t, v)</code>, and nothing else if they only pass the column on to the ResultSet.
+	 */
+	@FunctionalInterface
+	public static interface Handler<T> {
+		void handle(T t, PropertySetter setter, ResultSet rs, int column) throws Exception;
+	}
+
+	/**
+	 * The resolved mapping for one result set shape - parallel arrays of column index, setter and handler, 
+	 * in mapping order.  Null handling is decided here too: only extension handlers need the generic 
+	 * wasNull() check, the built in handlers deal with nulls themselves.
+	 */
+	private static final class MappingPlan<T> {
+		private final int[] columns;
+		private final PropertySetter[] setters;
+		private final Handler<T>[] handlers;
+		private final boolean[] nullChecks;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		MappingPlan(int size) {
+			columns = new int[size];
+			setters = new PropertySetter[size];
+			handlers = new Handler[size];
+			nullChecks = new boolean[size];
+		}
+	}
+
+	/**
+	 * The plan in use for the result set a thread is currently mapping.  The result set is only weakly held so 
+	 * that a mapper that is kept around does not pin the last statement it saw.
+	 */
+	private static final class CurrentPlan<T> {
+		private final WeakReference<ResultSet> rs;
+		private final MappingPlan<T> plan;
+
+		CurrentPlan(ResultSet rs, MappingPlan<T> plan) {
+			this.rs = new WeakReference<>(rs);
+			this.plan = plan;
+		}
+	}
+	
+	protected Class<T> clazz;
+	private JDBCUtils utils;
+	private HashMap<String, PropertySetter> mappings = new HashMap<String, PropertySetter>();
+	private HashMap<String, Handler<T>> handlers = new HashMap<>();
+	private HashMap<String, String> names = new HashMap<>();
+	private Set<String> nullChecked = new HashSet<>();
+	private final Plans plans = new Plans("");
+	private final ConcurrentHashMap<String, RowMapper<T>> prefixed = new ConcurrentHashMap<>();
+
+	/**
+	 * Subclassing constructor.
+	 * 
+	 * Calling classes MUST call init(JDBCUtils) explicitly.
+	 * 
+	 * @param clazz
+	 * @param utils
+	 */
+	protected BeanRowMapper(Class<T> clazz) {
+		this.clazz = clazz;
+	}
+	
+	public BeanRowMapper(Class<T> clazz, JDBCUtils utils) {
+		this.clazz = clazz;
+		init(utils);
+	}
+
+	protected void init(JDBCUtils utils) {
+		this.utils = utils;
+		for (EntityProperty property : EntityDescriptor.of(clazz).getColumns()) {
+			Field field = property.getField();
+			PropertySetter accessor = property.getSetterAccessor();
+			if (accessor == null) {
+				//Configuration error - has been logged
+				continue;
+			}
+
+			//Now work out the function
+			Class<?> type = field.getType();
+			Handler<T> handler = getExtensionHandler(field);
+			boolean extension = handler != null;
+			if (handler == null) {
+				handler = getPrimitiveHandler(property);
+			}
+			if (handler == null) {
+				if (type.equals(String.class)) {
+					handler = (t, setter, rs, column) -> setter.set(t, rs.getString(column));
+				//Consider java.util.Date to be a timestamp because this is common usage
+				} else if (type.equals(Timestamp.class) || type.equals(Date.class)) {
+					handler = (t, setter, rs, column) -> setter.set(t, rs.getTimestamp(column));
+				//But java.sql.Date to be a date
+				} else if (Date.class.isAssignableFrom(type)) {
+					handler = (t, setter, rs, column) -> setter.set(t, rs.getDate(column));
+				} else if (type.isEnum()) {
+					handler = (t, setter, rs, column) -> setter.set(t, toEnum(type, rs.getString(column)));
+				} else if (type.equals(UUID.class)) {
+					handler = (t, setter, rs, column) -> setter.set(t, toUUID(rs.getObject(column)));
+				} else {
+					//Wrapper types read the primitive and then check for null, so the null check is done here rather than per cell
+					if (type.equals(Integer.class)) {
+						handler = (t, setter, rs, column) -> {
+							int value = rs.getInt(column);
+							setter.set(t, rs.wasNull() ? null : value);
+						};
+					} else if (type.equals(Float.class)) {
+						handler = (t, setter, rs, column) -> {
+							float value = rs.getFloat(column);
+							setter.set(t, rs.wasNull() ? null : value);
+						};
+					} else if (type.equals(Double.class)) {
+						handler = (t, setter, rs, column) -> {
+							double value = rs.getDouble(column);
+							setter.set(t, rs.wasNull() ? null : value);
+						};
+					} else if (type.equals(BigDecimal.class)) {
+						handler = (t, setter, rs, column) -> setter.set(t, rs.getBigDecimal(column));
+					} else if (type.equals(Boolean.class)) {
+						handler = (t, setter, rs, column) -> {
+							boolean value = rs.getBoolean(column);
+							setter.set(t, rs.wasNull() ? null : value);
+						};
+					} else if (type.equals(Byte[].class) || type.equals(byte[].class)) {
+						handler = (t, setter, rs, column) -> setter.set(t, rs.getBytes(column));
+					} else if (type.equals(Long.class)) {
+						handler = (t, setter, rs, column) -> {
+							long value = rs.getLong(column);
+							setter.set(t, rs.wasNull() ? null : value);
+						};
+					}
+				}
+			}
+
+			if (handler == null) {
+				throw new IllegalArgumentException("No handler found for type " + type.getName());
+			}
+			String name = property.getColumn();
+			
+			mappings.put(name, accessor);
+			handlers.put(name, handler);
+			names.put(name.toLowerCase(Locale.ROOT), name);
+			if (extension) {
+				nullChecked.add(name);
+			}
+		}
+	}
+
+	/**
+	 * Primitive properties are written through a specialised setter so the value is never boxed.  A SQL NULL 
+	 * reads as zero/false, which leaves the property at its default.
+	 */
+	private Handler<T> getPrimitiveHandler(EntityProperty property) {
+		Class<?> type = property.getType();
+		if (!type.isPrimitive()) {
+			return null;
+		}
+		Method method = property.getSetter();
+		if (type.equals(int.class)) {
+			IntSetter setter = PropertyAccessors.intSetter(method);
+			return (t, unused, rs, column) -> setter.set(t, rs.getInt(column));
+		} else if (type.equals(long.class)) {
+			LongSetter setter = PropertyAccessors.longSetter(method);
+			return (t, unused, rs, column) -> setter.set(t, rs.getLong(column));
+		} else if (type.equals(double.class)) {
+			DoubleSetter setter = PropertyAccessors.doubleSetter(method);
+			return (t, unused, rs, column) -> setter.set(t, rs.getDouble(column));
+		} else if (type.equals(float.class)) {
+			FloatSetter setter = PropertyAccessors.floatSetter(method);
+			return (t, unused, rs, column) -> setter.set(t, rs.getFloat(column));
+		} else if (type.equals(boolean.class)) {
+			BooleanSetter setter = PropertyAccessors.booleanSetter(method);
+			return (t, unused, rs, column) -> setter.set(t, rs.getBoolean(column));
+		}
+		return null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object toEnum(Class<?> type, String value) {
+		return value == null ? null : Enum.valueOf((Class<Enum>)type, value);
+	}
+
+	/**
+	 * Drivers with a native UUID type return one, others a string
+	 */
+	private static UUID toUUID(Object value) {
+		return value == null || value instanceof UUID ? (UUID)value : UUID.fromString(value.toString());
+	}
+
+	/** 
+	 * Subclasses can implement specific type handling here
+	 * @param type the type that is being handled
+	 */
+	protected Handler<T> getExtensionHandler(Field type) {
+		return null;
+	}
+
+	@Override
+	public T mapRow(ResultSet rs, int row) throws SQLException {
+		return map(rs, plans.getPlan(rs));
+	}
+
+	/**
+	 * Returns a mapper for the same class that reads its columns from labels with the given prefix, for 
+	 * example <code>c_name</code> for the prefix <code>c_</code>.  This allows several entities to be mapped 
+	 * from one row of a join.  Other columns are ignored.
+	 */
+	public RowMapper<T> withPrefix(String prefix) {
+		RowMapper<T> mapper = prefixed.get(prefix);
+		if (mapper == null) {
+			Plans prefixedPlans = new Plans(prefix);
+			mapper = prefixed.computeIfAbsent(prefix, p -> (rs, row) -> map(rs, prefixedPlans.getPlan(rs)));
+		}
+		return mapper;
+	}
+
+	private T map(ResultSet rs, MappingPlan<T> plan) throws SQLException {
+		JDBCUtilsListener listener = utils == null ? null : utils.getListener();
+		long start = listener == null ? 0 : System.nanoTime();
+		try {
+			T t = clazz.newInstance();
+			
+			int[] columns = plan.columns;
+			PropertySetter[] setters = plan.setters;
+			Handler<T>[] handlers = plan.handlers;
+			boolean[] nullChecks = plan.nullChecks;
+			for (int i = 0; i < columns.length; i++) {
+				PropertySetter setter = setters[i];
+				handlers[i].handle(t, setter, rs, columns[i]);
+				//Override for nulls...
+				if (nullChecks[i] && rs.wasNull()) try {
+					setter.set(t, null);
+				} catch (Exception e) {
+					//Was a primitive, so leave as is.
+				}
+			}
+			if (utils != null && utils.isDirtyTracking()) {
+				utils.snapshot(t);
+			}
+			if (listener != null) {
+				listener.rowMapped(clazz, System.nanoTime() - start);
+			}
+			return t;
+		} catch (Exception e) {
+			System.out.println("**** Got an error");
+			e.printStackTrace();
+			Logger.getGlobal().log(Level.SEVERE, e.getMessage(), e);
+			throw new SQLException(e);
+		}
+		
+	}
+
+	/**
+	 * The plans for one column label prefix.
+	 */
+	private final class Plans {
+		private final String prefix;
+		private final ConcurrentHashMap<String, MappingPlan<T>> plans = new ConcurrentHashMap<>();
+		//Per thread, as mappers are shared and concurrent queries would otherwise keep displacing each other's plan
+		private final ThreadLocal<CurrentPlan<T>> current = new ThreadLocal<>();
+
+		Plans(String prefix) {
+			this.prefix = prefix.toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * Returns the plan for the given result set, reading its metadata only when a new result set is seen.  
+		 * Plans are shared between result sets with the same columns.
+		 */
+		MappingPlan<T> getPlan(ResultSet rs) throws SQLException {
+			CurrentPlan<T> current = this.current.get();
+			if (current != null && current.rs.get() == rs) {
+				return current.plan;
+			}
+
+			ResultSetMetaData metaData = rs.getMetaData();
+			int count = metaData.getColumnCount();
+			String[] labels = new String[count];
+			StringBuilder signature = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				labels[i] = metaData.getColumnLabel(i + 1);
+				signature.append(labels[i]).append(',');
+			}
+
+			MappingPlan<T> plan = plans.computeIfAbsent(signature.toString(), key -> buildPlan(labels));
+			this.current.set(new CurrentPlan<>(rs, plan));
+			return plan;
+		}
+
+		/**
+		 * Matches the result set columns to the mapped properties.  Columns with no property are ignored, as 
+		 * are properties with no column, and where a label is repeated (as in a join) the first one is used.
+		 */
+		private MappingPlan<T> buildPlan(String[] labels) {
+			Map<String, Integer> indexes = new HashMap<>();
+			for (int i = 0; i < labels.length; i++) {
+				String label = labels[i].toLowerCase(Locale.ROOT);
+				if (!label.startsWith(prefix)) {
+					continue;
+				}
+				String name = names.get(label.substring(prefix.length()));
+				if (name != null) {
+					indexes.putIfAbsent(name, i + 1);
+				}
+			}
+
+			//Allow ordering in case marshalling requires it
+			Collection<String> keys = setMappingOrder(indexes.keySet());
+
+			MappingPlan<T> plan = new MappingPlan<>(keys.size());
+			int i = 0;
+			for (String key : keys) {
+				plan.columns[i] = indexes.get(key);
+				plan.setters[i] = mappings.get(key);
+				plan.handlers[i] = handlers.get(key);
+				plan.nullChecks[i] = nullChecked.contains(key);
+				i++;
+			}
+			return plan;
+		}
+	}
+
+	protected Collection<String> setMappingOrder(Collection<String> fields) {
+		return fields;
+	}
+}
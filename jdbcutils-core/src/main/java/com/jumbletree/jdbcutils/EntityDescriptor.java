@@ -0,0 +1,353 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The persistence metadata for an entity class - table, id, columns, accessors and relationships.
+ *
+ * Descriptors are built once per class on first use and are immutable, so the reflection work
+ * is not repeated on every read or write and they can be shared freely between threads.
+ */
+public final class EntityDescriptor<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(EntityDescriptor.class);
+
+	private static final ClassValue<EntityDescriptor<?>> descriptors = new ClassValue<EntityDescriptor<?>>() {
+		@Override
+		protected EntityDescriptor<?> computeValue(Class<?> type) {
+			return new EntityDescriptor<>(type);
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	public static <T> EntityDescriptor<T> of(Class<T> clazz) {
+		return (EntityDescriptor<T>)descriptors.get(clazz);
+	}
+
+	/**
+	 * A many-to-many relationship declared on a getter of the entity
+	 */
+	public static final class ManyToManyRelation {
+		private final String getterName;
+		private final Class<?> target;
+		private final String mappedBy;
+
+		ManyToManyRelation(String getterName, Class<?> target, String mappedBy) {
+			this.getterName = getterName;
+			this.target = target;
+			this.mappedBy = mappedBy;
+		}
+
+		public Class<?> getTarget() {
+			return target;
+		}
+
+		/**
+		 * The mapping as given in the annotation, in the form <code>mapping_table.key_column</code>
+		 */
+		public String getMappedBy() {
+			return mappedBy;
+		}
+	}
+
+	private final Class<T> type;
+	private final String table;
+	private final EntityProperty id;
+	private final boolean generatedId;
+	private final EntityProperty version;
+	private final EntityProperty shardKey;
+	private final List<EntityProperty> columns;
+	private final List<EntityProperty> updateColumns;
+	private final List<EntityProperty> insertColumns;
+	private final List<EntityProperty> manyToOnes;
+	private final List<ManyToManyRelation> manyToManys;
+	private final Map<Field, EntityProperty> byField;
+	private final Map<String, EntityProperty> byName;
+
+	private EntityDescriptor(Class<T> type) {
+		this.type = type;
+		this.table = findTable(type);
+
+		EntityProperty id = null;
+		boolean generatedId = false;
+		EntityProperty version = null;
+		EntityProperty shardKey = null;
+		List<EntityProperty> columns = new ArrayList<>();
+		List<EntityProperty> updateColumns = new ArrayList<>();
+		List<EntityProperty> insertColumns = new ArrayList<>();
+		List<EntityProperty> manyToOnes = new ArrayList<>();
+		Map<Field, EntityProperty> byField = new HashMap<>();
+		Map<String, EntityProperty> byName = new HashMap<>();
+
+		Class<?> theClass = type;
+		while (theClass != null) {
+			for (Field field : theClass.getDeclaredFields()) {
+				Column col = field.getAnnotation(Column.class);
+				boolean isId = field.getAnnotation(Id.class) != null;
+				ManyToOne m2o = field.getAnnotation(ManyToOne.class);
+				if (col == null && !isId && m2o == null) {
+					if (field.getAnnotation(ShardKey.class) != null) {
+						throw new IllegalArgumentException(type.getName() + "." + field.getName() + " must be an id or column to be used as a shard key");
+					}
+					continue;
+				}
+
+				EntityProperty property = new EntityProperty(field, getColumnName(field, col), findGetter(field), findSetter(field, col != null),
+						m2o == null ? null : m2o.targetEntity());
+				byField.put(field, property);
+				byName.putIfAbsent(field.getName(), property);
+
+				if (col != null)
+					columns.add(property);
+				if (col != null && version == null && field.getAnnotation(Version.class) != null) {
+					Class<?> versionType = field.getType();
+					if (!versionType.equals(int.class) && !versionType.equals(Integer.class) && !versionType.equals(long.class) && !versionType.equals(Long.class)) {
+						throw new IllegalArgumentException(type.getName() + "." + field.getName() + " must be an int or long to be used as a version");
+					}
+					version = property;
+				}
+				if (shardKey == null && field.getAnnotation(ShardKey.class) != null) {
+					if (col == null && !isId) {
+						throw new IllegalArgumentException(type.getName() + "." + field.getName() + " must be an id or column to be used as a shard key");
+					}
+					shardKey = property;
+				}
+				if (m2o != null)
+					manyToOnes.add(property);
+
+				if (isId && id == null) {
+					id = property;
+					generatedId = field.getAnnotation(GeneratedValue.class) != null;
+					if (col != null && !generatedId)
+						insertColumns.add(property);
+				} else if (col != null) {
+					updateColumns.add(property);
+					insertColumns.add(property);
+				}
+			}
+			theClass = theClass.getSuperclass();
+		}
+
+		List<ManyToManyRelation> manyToManys = new ArrayList<>();
+		theClass = type;
+		while (theClass != null) {
+			for (Method method : theClass.getDeclaredMethods()) {
+				ManyToMany m2m = method.getAnnotation(ManyToMany.class);
+				if (m2m != null) {
+					manyToManys.add(new ManyToManyRelation(method.getName(), m2m.targetEntity(), m2m.mappedBy()));
+				}
+			}
+			theClass = theClass.getSuperclass();
+		}
+
+		this.id = id;
+		this.generatedId = generatedId;
+		this.version = version;
+		this.shardKey = shardKey;
+		this.columns = Collections.unmodifiableList(columns);
+		this.updateColumns = Collections.unmodifiableList(updateColumns);
+		this.insertColumns = Collections.unmodifiableList(insertColumns);
+		this.manyToOnes = Collections.unmodifiableList(manyToOnes);
+		this.manyToManys = Collections.unmodifiableList(manyToManys);
+		this.byField = byField;
+		this.byName = byName;
+	}
+
+	private static String findTable(Class<?> clazz) {
+		Table table = clazz.getAnnotation(Table.class);
+		if (table != null && table.name() != null && table.name().length() > 0)
+			return table.name();
+
+		Entity entity = clazz.getAnnotation(Entity.class);
+		if (entity != null && entity.name() != null && entity.name().length() > 0)
+			return entity.name();
+
+		return null;
+	}
+
+	private static String getColumnName(Field field, Column col) {
+		if (col == null)
+			return null;
+
+		if (col.name() != null && col.name().length() > 0) {
+			return col.name();
+		}
+
+		return field.getName();
+	}
+
+	private static Method findGetter(Field field) {
+		try {
+			return field.getDeclaringClass().getMethod(EntityProperty.getGetterName(field.getName(), field.getType().equals(Boolean.TYPE)));
+		} catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+	}
+
+	private static Method findSetter(Field field, boolean required) {
+		try {
+			return field.getDeclaringClass().getMethod(EntityProperty.getSetterName(field.getName()), field.getType());
+		} catch (NoSuchMethodException | SecurityException e) {
+			if (required) {
+				logger.error(e.getMessage(), e);
+			}
+			return null;
+		}
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	public String getTable() {
+		if (table == null) {
+			throw new IllegalArgumentException("No table name specified");
+		}
+		return table;
+	}
+
+	/**
+	 * The id property, or null if the class does not specify one
+	 */
+	public EntityProperty getIdProperty() {
+		return id;
+	}
+
+	public String getIdColumn() {
+		if (id == null) {
+			throw new IllegalArgumentException(type.getName() + " does not specify an id field");
+		}
+		if (id.getColumn() == null) {
+			throw new IllegalArgumentException(type.getName() + "'s id field does not specify a column");
+		}
+		return id.getColumn();
+	}
+
+	public boolean isGeneratedId() {
+		return generatedId;
+	}
+
+	/**
+	 * The {@link Version} property used for optimistic locking, or null if the class does not have one
+	 */
+	public EntityProperty getVersionProperty() {
+		return version;
+	}
+
+	/**
+	 * The {@link ShardKey} property, or null if the class is not sharded
+	 */
+	public EntityProperty getShardKeyProperty() {
+		return shardKey;
+	}
+
+	public Serializable getId(Object source) {
+		if (id == null) {
+			throw new IllegalArgumentException(type.getName() + " does not specify an id field");
+		}
+		try {
+			return (Serializable)id.get(source);
+		} catch (NoSuchMethodException | RuntimeException e) {
+			throw new IllegalArgumentException("Couldn't access id of " + source.getClass().getName());
+		}
+	}
+
+	/**
+	 * All properties with a column mapping (including the id if it has a column), in field order
+	 */
+	public List<EntityProperty> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * The column properties written by an update - everything except the id
+	 */
+	public List<EntityProperty> getUpdateColumns() {
+		return updateColumns;
+	}
+
+	/**
+	 * The column properties written by an insert - everything except a generated id
+	 */
+	public List<EntityProperty> getInsertColumns() {
+		return insertColumns;
+	}
+
+	public List<EntityProperty> getManyToOnes() {
+		return manyToOnes;
+	}
+
+	/**
+	 * The first many-to-one on this class that references the given target, or null if there are none
+	 */
+	public EntityProperty getManyToOne(Class<?> target) {
+		for (EntityProperty property : manyToOnes) {
+			if (property.getManyToOneTarget().equals(target)) {
+				return property;
+			}
+		}
+		return null;
+	}
+
+	public List<ManyToManyRelation> getManyToManys() {
+		return manyToManys;
+	}
+
+	/**
+	 * The first many-to-many on this class that references the given target, or null if there are none
+	 */
+	public ManyToManyRelation getManyToMany(Class<?> target) {
+		for (ManyToManyRelation m2m : manyToManys) {
+			if (m2m.target.equals(target)) {
+				return m2m;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The many-to-many to the given target declared on the getter for the given property, or null if there is none
+	 */
+	public ManyToManyRelation getManyToMany(Class<?> target, String property) {
+		String getterName = EntityProperty.getGetterName(property, false);
+		for (ManyToManyRelation m2m : manyToManys) {
+			if (m2m.target.equals(target) && m2m.getterName.equals(getterName)) {
+				return m2m;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The mapped property for the given field, or null if the field is not an id, column or many-to-one
+	 */
+	public EntityProperty getProperty(Field field) {
+		return byField.get(field);
+	}
+
+	/**
+	 * The mapped property with the given field name, or null if there is no such property
+	 */
+	public EntityProperty getProperty(String name) {
+		return byName.get(name);
+	}
+}
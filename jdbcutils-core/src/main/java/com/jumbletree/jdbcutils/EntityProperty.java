@@ -0,0 +1,124 @@
+package com.jumbletree.jdbcutils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * A single persistent property of an entity - the field, its column and its accessors.
+ * Instances are created by {@link EntityDescriptor} and are immutable.
+ */
+public final class EntityProperty {
+
+	private final Field field;
+	private final String column;
+	private final Method getter;
+	private final Method setter;
+	private final Class<?> manyToOneTarget;
+	private final PropertyGetter getterAccessor;
+	private final PropertySetter setterAccessor;
+
+	EntityProperty(Field field, String column, Method getter, Method setter, Class<?> manyToOneTarget) {
+		this.field = field;
+		this.column = column;
+		this.getter = getter;
+		this.setter = setter;
+		this.manyToOneTarget = manyToOneTarget;
+		this.getterAccessor = getter == null ? null : PropertyAccessors.getter(getter);
+		this.setterAccessor = setter == null ? null : PropertyAccessors.setter(setter);
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	public String getName() {
+		return field.getName();
+	}
+
+	public Class<?> getType() {
+		return field.getType();
+	}
+
+	/**
+	 * The column this property is persisted to, or null if the field has no column mapping
+	 */
+	public String getColumn() {
+		return column;
+	}
+
+	public Method getGetter() throws NoSuchMethodException {
+		if (getter == null) {
+			throw new NoSuchMethodException(field.getDeclaringClass().getName() + " has no getter for " + field.getName());
+		}
+		return getter;
+	}
+
+	/**
+	 * The setter for this property, or null if none exists
+	 */
+	public Method getSetter() {
+		return setter;
+	}
+
+	/**
+	 * The accessor used to read this property, or null if there is no getter
+	 */
+	public PropertyGetter getGetterAccessor() {
+		return getterAccessor;
+	}
+
+	/**
+	 * The accessor used to write this property, or null if there is no setter
+	 */
+	public PropertySetter getSetterAccessor() {
+		return setterAccessor;
+	}
+
+	public Object get(Object bean) throws NoSuchMethodException {
+		if (getterAccessor == null) {
+			throw new NoSuchMethodException(field.getDeclaringClass().getName() + " has no getter for " + field.getName());
+		}
+		return getterAccessor.get(bean);
+	}
+
+	public void set(Object bean, Object value) throws NoSuchMethodException {
+		if (setterAccessor == null) {
+			throw new NoSuchMethodException(field.getDeclaringClass().getName() + " has no setter for " + field.getName());
+		}
+		setterAccessor.set(bean, value);
+	}
+
+	/**
+	 * The target entity of a many-to-one relationship on this field, or null if the field is not a many-to-one
+	 */
+	public Class<?> getManyToOneTarget() {
+		return manyToOneTarget;
+	}
+
+	/**
+	 * Copies a column value of one of the mutable types - dates, calendars and byte arrays - so a holder of the 
+	 * copy doesn't see changes made in place to the original.  Other values are returned as they are.
+	 */
+	static Object copyValue(Object value) {
+		if (value instanceof Date) {
+			return ((Date)value).clone();
+		}
+		if (value instanceof Calendar) {
+			return ((Calendar)value).clone();
+		}
+		if (value instanceof byte[]) {
+			return ((byte[])value).clone();
+		}
+		return value;
+	}
+
+	static String getGetterName(String name, boolean isBoolean) {
+		return (isBoolean ? "is" : "get") + name.substring(0, 1).toUpperCase() + name.substring(1);
+	}
+
+	static String getSetterName(String name) {
+		return "set" + name.substring(0, 1).toUpperCase() + name.substring(1);
+	}
+}
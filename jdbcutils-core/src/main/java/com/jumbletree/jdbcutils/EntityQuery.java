@@ -0,0 +1,251 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * A query for entities of one class, created by {@link JDBCUtils#query(Class)}.  Constraints work as they
+ * do for {@link JDBCUtils#queryFor(Class, Object...)}, and {@link #fetch(Class)} loads many-to-one targets
+ * in the same statement:
+ *
+ * <pre>
+ * List&lt;Order&gt; orders = utils.query(Order.class).constrainedBy(store).fetch(Customer.class).list();
+ * </pre>
+ *
+ * Fetched targets are put in the {@link ObjectCache}, so a later getManyToOne for them is a cache hit.
+ * {@link #stream()} reads the results over a cursor rather than into a list, for result sets too big for
+ * the heap - in that case {@link #cache(boolean) cache(false)} keeps the memory use constant.
+ */
+public class EntityQuery<T> {
+
+	private final JDBCUtils utils;
+	private final Class<T> clazz;
+	private final List<String> conditions = new ArrayList<>();
+	private final List<Object> args = new ArrayList<>();
+	private final List<EntityProperty> fetches = new ArrayList<>();
+	private Boolean cache;
+	private int fetchSize;
+
+	EntityQuery(JDBCUtils utils, Class<T> clazz) {
+		this.utils = utils;
+		this.clazz = clazz;
+		this.fetchSize = utils.getFetchSize();
+	}
+
+	/**
+	 * Restricts the results to those with a foreign key to each of the given objects.  Results are only
+	 * guaranteed if the class has exactly ONE foreign key to each given object's class.
+	 */
+	public EntityQuery<T> constrainedBy(Object ... constraints) {
+		EntityDescriptor<T> descriptor = EntityDescriptor.of(clazz);
+		for (Object o : constraints) {
+			Class<?> constraintClass = o.getClass();
+			EntityProperty field = descriptor.getManyToOne(constraintClass);
+			if (field == null) {
+				throw new IllegalArgumentException(clazz + " does not specify a many-to-one join with " + constraintClass);
+			}
+			conditions.add("t." + field.getColumn() + " = ?");
+			args.add(EntityDescriptor.of(constraintClass).getId(o));
+		}
+		return this;
+	}
+
+	/**
+	 * Restricts the results to those whose given many-to-one property references the given object.  Use 
+	 * this where the class has more than one foreign key to the object's class.
+	 */
+	public EntityQuery<T> constrainedBy(String mappedBy, Object source) {
+		Class<?> sourceClass = source.getClass();
+		EntityProperty field = EntityDescriptor.of(clazz).getProperty(mappedBy);
+		if (field == null) {
+			throw new IllegalArgumentException(clazz + "." + mappedBy + " does not exist or is not accessible");
+		}
+		if (field.getManyToOneTarget() == null || !field.getManyToOneTarget().equals(sourceClass)) {
+			throw new IllegalArgumentException(clazz + "." + mappedBy + " does not describe a many to one of type " + sourceClass);
+		}
+		conditions.add("t." + field.getColumn() + " = ?");
+		args.add(EntityDescriptor.of(sourceClass).getId(source));
+		return this;
+	}
+
+	/**
+	 * Loads the many-to-one target of the given class along with each result, using a LEFT JOIN.  There must
+	 * be exactly ONE many-to-one to the target class.  The targets are only kept in the {@link ObjectCache}, so
+	 * with {@link #cache(boolean) cache(false)} the join is left out of the query.
+	 */
+	public EntityQuery<T> fetch(Class<?> target) {
+		EntityProperty field = EntityDescriptor.of(clazz).getManyToOne(target);
+		if (field == null) {
+			throw new IllegalArgumentException(clazz + " does not specify a many-to-one join with " + target);
+		}
+		fetches.add(field);
+		return this;
+	}
+
+	/**
+	 * Sets whether loaded objects are added to the {@link ObjectCache}.  When true the results themselves are
+	 * cached (and an instance already in the cache is returned in place of the loaded one), when false nothing
+	 * is.  By default only fetched targets are cached.
+	 */
+	public EntityQuery<T> cache(boolean cache) {
+		this.cache = cache;
+		return this;
+	}
+
+	/**
+	 * Sets the number of rows the driver reads at a time for {@link #stream()}.  Defaults to 
+	 * {@link JDBCUtils#getFetchSize()}.
+	 */
+	public EntityQuery<T> fetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("Fetch size must be positive");
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	public List<T> list() {
+		return utils.select(clazz, getSql(), getRowMapper(), args.toArray());
+	}
+
+	/**
+	 * Runs the query over a forward only cursor, mapping each row as the stream is consumed.  The stream holds 
+	 * a connection until it is exhausted or closed, so use it in a try-with-resources block:
+	 *
+	 * <pre>
+	 * try (Stream&lt;Order&gt; orders = utils.query(Order.class).cache(false).stream()) {
+	 *     orders.forEach(exporter::write);
+	 * }
+	 * </pre>
+	 */
+	public Stream<T> stream() {
+		return utils.selectStream(clazz, getSql(), getRowMapper(), args.toArray(), fetchSize);
+	}
+
+	/**
+	 * Pages through the results in id order, using keyset pagination.  See {@link Paginator}.
+	 */
+	public Paginator<T> paginate(int pageSize) {
+		return paginate(pageSize, null);
+	}
+
+	/**
+	 * Pages through the results in id order, starting after the position given by a cursor from 
+	 * {@link Paginator#getCursor()} or {@link Page#getCursor()}
+	 */
+	public Paginator<T> paginate(int pageSize, String cursor) {
+		EntityDescriptor<T> descriptor = EntityDescriptor.of(clazz);
+		descriptor.getIdColumn();
+		return new Paginator<>(this, descriptor, pageSize, cursor);
+	}
+
+	/**
+	 * Reads the page of up to size results with ids after the given one, or from the start if it is null
+	 */
+	List<T> page(Object after, int size) {
+		List<String> pageConditions = new ArrayList<>(conditions);
+		List<Object> pageArgs = new ArrayList<>(args);
+		String idColumn = "t." + utils.getIDColumn(clazz);
+		if (after != null) {
+			pageConditions.add(idColumn + " > ?");
+			pageArgs.add(after);
+		}
+		pageArgs.add(size);
+		String sql = getSql(pageConditions) + " ORDER BY " + idColumn + " LIMIT ?";
+		return utils.select(clazz, sql, getRowMapper(), pageArgs.toArray());
+	}
+
+	String getSql() {
+		return getSql(conditions);
+	}
+
+	/**
+	 * The fetches to join - none when caching is off, as there is nowhere to put the targets
+	 */
+	private List<EntityProperty> getJoins() {
+		return Boolean.FALSE.equals(cache) ? Collections.emptyList() : fetches;
+	}
+
+	private String getSql(List<String> conditions) {
+		List<EntityProperty> fetches = getJoins();
+		StringBuilder sql = new StringBuilder("SELECT ");
+		if (fetches.isEmpty()) {
+			sql.append("t.*");
+		} else {
+			appendColumns(sql, clazz, "t");
+			for (int i = 0; i < fetches.size(); i++) {
+				sql.append(", ");
+				appendColumns(sql, fetches.get(i).getManyToOneTarget(), "f" + i);
+			}
+		}
+		sql.append(" FROM ").append(utils.getTable(clazz)).append(" t");
+		for (int i = 0; i < fetches.size(); i++) {
+			EntityProperty field = fetches.get(i);
+			Class<?> target = field.getManyToOneTarget();
+			sql.append(" LEFT JOIN ").append(utils.getTable(target)).append(" f").append(i)
+				.append(" ON f").append(i).append(".").append(utils.getIDColumn(target)).append(" = t.").append(field.getColumn());
+		}
+		if (!conditions.isEmpty()) {
+			sql.append(" WHERE ").append(String.join(" AND ", conditions));
+		}
+		return sql.toString();
+	}
+
+	private void appendColumns(StringBuilder sql, Class<?> entity, String alias) {
+		boolean first = true;
+		for (EntityProperty property : EntityDescriptor.of(entity).getColumns()) {
+			if (!first) {
+				sql.append(", ");
+			}
+			sql.append(alias).append(".").append(property.getColumn()).append(" AS ").append(alias).append("_").append(property.getColumn());
+			first = false;
+		}
+	}
+
+	RowMapper<T> getRowMapper() {
+		RowMapper<T> mapper = getJoinMapper();
+		if (!Boolean.TRUE.equals(cache)) {
+			return mapper;
+		}
+		return (rs, row) -> utils.register(ObjectCache.get(), clazz, mapper.mapRow(rs, row));
+	}
+
+	private RowMapper<T> getJoinMapper() {
+		List<EntityProperty> fetches = getJoins();
+		if (fetches.isEmpty()) {
+			return utils.getRowMapper(clazz);
+		}
+
+		RowMapper<T> root = utils.getBeanRowMapper(clazz).withPrefix("t_");
+		int size = fetches.size();
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Class<Object>[] targets = new Class[size];
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		RowMapper<Object>[] mappers = new RowMapper[size];
+		String[] idLabels = new String[size];
+		for (int i = 0; i < size; i++) {
+			@SuppressWarnings("unchecked")
+			Class<Object> target = (Class<Object>)fetches.get(i).getManyToOneTarget();
+			targets[i] = target;
+			mappers[i] = utils.getBeanRowMapper(target).withPrefix("f" + i + "_");
+			idLabels[i] = "f" + i + "_" + utils.getIDColumn(target);
+		}
+
+		return (rs, row) -> {
+			T t = root.mapRow(rs, row);
+			ObjectCache cache = ObjectCache.get();
+			for (int i = 0; i < size; i++) {
+				//No match on the outer join
+				if (rs.getObject(idLabels[i]) == null) {
+					continue;
+				}
+				utils.register(cache, targets[i], mappers[i].mapRow(rs, row));
+			}
+			return t;
+		};
+	}
+}
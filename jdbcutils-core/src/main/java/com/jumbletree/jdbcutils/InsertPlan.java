@@ -0,0 +1,66 @@
+package com.jumbletree.jdbcutils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The compiled INSERT for an entity class - a fixed column order and the SQL to go with it.  Plans are
+ * built once per class and are immutable.  Generated keys are returned through 
+ * {@link PreparedStatement#getGeneratedKeys()}, which drivers such as PostgreSQL implement by appending 
+ * a RETURNING clause.
+ */
+final class InsertPlan {
+
+	private final String sql;
+	private final List<EntityProperty> columns;
+	private final EntityProperty generatedId;
+	private final String[] keyColumns;
+
+	InsertPlan(String table, EntityDescriptor<?> descriptor) {
+		this.columns = descriptor.getInsertColumns();
+		this.generatedId = descriptor.isGeneratedId() ? descriptor.getIdProperty() : null;
+		this.keyColumns = generatedId == null ? null : new String[] { generatedId.getColumn() };
+
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table);
+		if (columns.isEmpty()) {
+			sql.append(" DEFAULT VALUES");
+		} else {
+			StringBuilder values = new StringBuilder();
+			sql.append(" (");
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					sql.append(", ");
+					values.append(", ");
+				}
+				sql.append(columns.get(i).getColumn());
+				values.append("?");
+			}
+			sql.append(") VALUES (").append(values).append(")");
+		}
+		this.sql = sql.toString();
+	}
+
+	String getSql() {
+		return sql;
+	}
+
+	/**
+	 * The properties to bind, in parameter order
+	 */
+	List<EntityProperty> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * The generated id property, or null if the id is not generated
+	 */
+	EntityProperty getGeneratedId() {
+		return generatedId;
+	}
+
+	PreparedStatement prepare(Connection con) throws SQLException {
+		return keyColumns == null ? con.prepareStatement(sql) : con.prepareStatement(sql, keyColumns);
+	}
+}
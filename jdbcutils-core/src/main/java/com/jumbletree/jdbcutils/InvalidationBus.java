@@ -0,0 +1,147 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells the other nodes sharing a database which entities have been written, so that their
+ * {@link SharedCache}s don't serve stale copies.  Set one with {@link JDBCUtils#setInvalidationBus(InvalidationBus)}
+ * and every write made through that JDBCUtils is published; events received from other nodes are applied to
+ * the local shared cache.
+ *
+ * Published events are coalesced - writing the same entity many times within the flush interval sends one
+ * event - and are sent in batches, either every flush interval or as soon as a batch is full.
+ */
+public class InvalidationBus implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+	private final InvalidationTransport transport;
+	private final SharedCache cache;
+	private final int maxBatch;
+	private final LinkedHashSet<InvalidationEvent> pending = new LinkedHashSet<>();
+	private final ScheduledExecutorService flusher;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a bus that flushes every 10ms in batches of up to 256 events
+	 */
+	public InvalidationBus(InvalidationTransport transport, SharedCache cache) {
+		this(transport, cache, 10, TimeUnit.MILLISECONDS, 256);
+	}
+
+	public InvalidationBus(InvalidationTransport transport, SharedCache cache, long flushInterval, TimeUnit unit, int maxBatch) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("Max batch must be positive");
+		}
+		this.transport = transport;
+		this.cache = cache;
+		this.maxBatch = maxBatch;
+		this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jdbcutils-invalidation");
+			thread.setDaemon(true);
+			return thread;
+		});
+		transport.start(this::receive);
+		flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+	}
+
+	/**
+	 * Queues an event for the given entity, or for all entities of the class if the id is null.  Does nothing
+	 * once the bus is closed.
+	 */
+	public void publish(Class<?> clazz, Serializable id) {
+		if (closed) {
+			return;
+		}
+		boolean full;
+		synchronized (pending) {
+			pending.add(new InvalidationEvent(clazz.getName(), id));
+			full = pending.size() >= maxBatch;
+		}
+		if (full) {
+			try {
+				flusher.execute(this::flush);
+			} catch (RejectedExecutionException e) {
+				//Closed since the check above
+			}
+		}
+	}
+
+	/**
+	 * Sends everything queued so far
+	 */
+	public void flush() {
+		while (true) {
+			List<InvalidationEvent> batch;
+			synchronized (pending) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = new ArrayList<>(Math.min(pending.size(), maxBatch));
+				for (InvalidationEvent event : pending) {
+					batch.add(event);
+					if (batch.size() == maxBatch) {
+						break;
+					}
+				}
+				pending.removeAll(batch);
+			}
+			try {
+				transport.send(batch);
+			} catch (RuntimeException e) {
+				logger.error("Couldn't send " + batch.size() + " invalidation events", e);
+			}
+		}
+	}
+
+	/**
+	 * Applies events from another node to the local cache.  Types are resolved against the classes enabled in
+	 * the cache rather than a class loader, as entities may well be loaded by a different one to this library, 
+	 * and a class that isn't enabled has nothing cached to invalidate.
+	 */
+	void receive(List<InvalidationEvent> events) {
+		if (cache == null) {
+			return;
+		}
+		for (InvalidationEvent event : events) {
+			Class<?> clazz = cache.getEnabledClass(event.getType());
+			if (clazz == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Ignoring invalidation of " + event.getType() + ", which isn't cached here");
+				}
+				continue;
+			}
+			if (event.getId() == null) {
+				cache.invalidateAll(clazz);
+			} else {
+				cache.invalidate(clazz, event.getId());
+			}
+		}
+	}
+
+	/**
+	 * Sends anything still queued and closes the transport
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		transport.close();
+	}
+}
@@ -0,0 +1,54 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+
+/**
+ * Notice that an entity has been written and any cached copy of it is stale.  An event with no id invalidates
+ * every cached object of the class.
+ */
+public final class InvalidationEvent {
+
+	private final String type;
+	private final Serializable id;
+
+	public InvalidationEvent(String type, Serializable id) {
+		if (type == null) {
+			throw new IllegalArgumentException("An invalidation event needs a type");
+		}
+		this.type = type;
+		this.id = id;
+	}
+
+	/**
+	 * The name of the entity class
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * The id of the entity, or null for all entities of the type
+	 */
+	public Serializable getId() {
+		return id;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * type.hashCode() + (id == null ? 0 : id.hashCode());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof InvalidationEvent)) {
+			return false;
+		}
+		InvalidationEvent other = (InvalidationEvent)obj;
+		return type.equals(other.type) && (id == null ? other.id == null : id.equals(other.id));
+	}
+
+	@Override
+	public String toString() {
+		return type + "#" + (id == null ? "*" : id);
+	}
+}
@@ -0,0 +1,25 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Carries batches of {@link InvalidationEvent}s between the nodes sharing a database, for an 
+ * {@link InvalidationBus}.  A transport does not deliver a node's own events back to it.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+	/**
+	 * Starts receiving, passing each batch from another node to the receiver
+	 */
+	void start(Consumer<List<InvalidationEvent>> receiver);
+
+	/**
+	 * Sends a batch to the other nodes.  Delivery is best effort, so caches using a bus should still have a 
+	 * time to live.
+	 */
+	void send(List<InvalidationEvent> events);
+
+	@Override
+	void close();
+}
@@ -1,681 +1,1885 @@
-package com.jumbletree.jdbcutils;
-
-import java.io.Serializable;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import javax.persistence.Column;
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.Id;
-import javax.persistence.ManyToMany;
-import javax.persistence.ManyToOne;
-import javax.persistence.Table;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
-
-public class JDBCUtils {
-
-	private final Logger logger = LoggerFactory.getLogger(JDBCUtils.class);
-	
-	private HashMap<Class<?>, Field> idCache = new HashMap<>();
-
-	private JdbcTemplate readTemplate;
-	private JdbcTemplate writeTemplate;
-	
-	public JDBCUtils(JdbcTemplate template) {
-		this(template, template);
-	}
-	
-	public JDBCUtils(JdbcTemplate readTemplate, JdbcTemplate writeTemplate) {
-		this.readTemplate = readTemplate;
-		this.writeTemplate = writeTemplate;
-	}
-	
-	private ManyToMany findManyToMany(Class<?> clazz, Class<?> target) {
-		for (Method method : getAllMethods(clazz)) {
-			ManyToMany m2m = method.getAnnotation(ManyToMany.class);
-			if (m2m != null && m2m.targetEntity().equals(target)) {
-				return m2m;
-			}
-		}
-		return null;
-	}
-	
-	private ManyToMany findManyToMany(Class<?> clazz, Class<?> target, String property) {
-		for (Method method : getAllMethods(clazz)) {
-			ManyToMany m2m = method.getAnnotation(ManyToMany.class);
-			if (m2m != null && m2m.targetEntity().equals(target) && method.getName().equals(getGetterName(property, false))) {
-				return m2m;
-			}
-		}
-		return null;
-	}
-	/**
-	 * Returns a list of objects associated with another via a many-to-many relationship.  The
-	 * relationship must be defined on the source class
-	 * @param source the originating object
-	 * @param targetClass the class of the remote object
-	 * @param jdbcTemplate db access
-	 * @return
-	 */
-	public <T> List<T> getManyToMany(Object source, Class<T> targetClass) {
-		Class<?> sourceClass = source.getClass();
-		
-		ManyToMany sourceM2m = findManyToMany(sourceClass, targetClass);
-		ManyToMany targetM2m = findManyToMany(targetClass, sourceClass);
-		
-		if (sourceM2m == null || targetM2m == null) {
-			throw new IllegalArgumentException("Both " + sourceClass + " and " + targetClass + " must specify many to many details, but one or both does not");
-		}
-		
-		String sourceMapped = sourceM2m.mappedBy();
-		String mappingTable = sourceMapped.substring(0, sourceMapped.indexOf("."));
-		String targetKey = sourceMapped.substring(sourceMapped.indexOf(".") + 1);
-		
-		String sourceKey = targetM2m.mappedBy();
-		sourceKey = sourceKey.substring(sourceKey.indexOf(".") + 1);
-		
-		String query = "SELECT t.* FROM " + getTable(targetClass) + " t JOIN " + mappingTable + " m ON t."
-				+ getIDColumn(targetClass) + " = m." + targetKey + " WHERE m." + sourceKey + " = ?";
-		
-		return readTemplate.query(query, getRowMapper(targetClass), getID(source));
-	}
-	
-	/**
-	 * Returns a list of objects associated with another via a many-to-many relationship.  The
-	 * relationship must be defined on the source class.  This method enabled multiple many-to-many
-	 * relationships to existing within the one class by allowing the specification of precisely 
-	 * which relationship to use
-	 * @param source the originating object
-	 * @param targetClass the class of the remote object
-	 * @param jdbcTemplate db access
-	 * @return
-	 */
-	public <T> List<T> getManyToMany(Object source, Class<T> targetClass, String mappingFrom, String mappingTo) {
-		Class<?> sourceClass = source.getClass();
-		
-		ManyToMany sourceM2m = findManyToMany(sourceClass, targetClass, mappingFrom);
-		ManyToMany targetM2m = findManyToMany(targetClass, sourceClass, mappingTo);
-		
-		if (sourceM2m == null || targetM2m == null) {
-			throw new IllegalArgumentException("Both " + sourceClass + " and " + targetClass + " must specify many to many details, but one or both does not");
-		}
-		
-		String sourceMapped = sourceM2m.mappedBy();
-		String mappingTable = sourceMapped.substring(0, sourceMapped.indexOf("."));
-		String targetKey = sourceMapped.substring(sourceMapped.indexOf(".") + 1);
-		
-		String sourceKey = targetM2m.mappedBy();
-		sourceKey = sourceKey.substring(sourceKey.indexOf(".") + 1);
-		
-		String query = "SELECT t.* FROM " + getTable(targetClass) + " t JOIN " + mappingTable + " m ON t."
-				+ getIDColumn(targetClass) + " = m." + targetKey + " WHERE m." + sourceKey + " = ?";
-		
-		return readTemplate.query(query, getRowMapper(targetClass), getID(source));
-	}
-
-	/**
-	 * Returns a list of objects associated with another via a one-to-many relationship.  The
-	 * relationship must be defined on the source class and there must be only ONE relationship of the given target type.
-	 * If multiple relationships exist, use getOneToMany(Object, Class<T>, String, JdbcTemplate) instead.
-	 * @param source the originating object
-	 * @param targetClass the class of the remote object
-	 * @param jdbcTemplate db access
-	 * @return
-	 */
-	public <T> List<T> getOneToMany(Object source, Class<T> targetClass) {
-		Class<? extends Object> sourceClass = source.getClass();
-		
-		//Do a reverse lookup
-		for (Field field : getAllFields(targetClass)) {
-			ManyToOne m2o = field.getAnnotation(ManyToOne.class);
-			if (m2o != null && m2o.targetEntity().equals(sourceClass)) {
-				String targetTable = getTable(targetClass);
-				//Now construct a query 
-
-				String targetKey = getColumnName(field, null);
-				
-				String query = "SELECT t.* FROM " + targetTable + " t WHERE t." + targetKey + " = ?";
-				return readTemplate.query(query, getRowMapper(targetClass), getID(source));
-			}
-		}
-		throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
-	}
-
-	/**
-	 * Returns a list of objects associated with another via a one-to-many relationship on the given field
-	 * @param source the originating object
-	 * @param targetClass the class of the remote object
-	 * @param mappedBy the field that holds the foreign key (in the foreign class)
-	 * @param jdbcTemplate db access
-	 * @return
-	 */
-	public <T> List<T> getOneToMany(Object source, Class<T> targetClass, String mappedBy) {
-		Class<? extends Object> sourceClass = source.getClass();
-		
-		try {
-			Field field = targetClass.getField(mappedBy);
-			ManyToOne m2o = field.getAnnotation(ManyToOne.class);
-			if (m2o == null || !m2o.targetEntity().equals(sourceClass)) {
-				throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not describe a many to one of type " + source.getClass());
-			}
-			String targetTable = getTable(targetClass);
-			//Now construct a query 
-
-			String targetKey = getColumnName(field, null);
-			
-			String query = "SELECT t.* FROM " + targetTable + " t WHERE t." + targetKey + " = ?";
-			return readTemplate.query(query, getRowMapper(targetClass), getID(source));
-		} catch (NoSuchFieldException | SecurityException e) {
-			throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not exist or is not accessible");
-		}
-	}
-
-	/**
-	 * Returns an objects associated with another via a many-to-one relationship.  The
-	 * relationship must be defined on the source class and there must be only ONE relationship of the given target type.
-	 * If multiple relationships exist, use getManyToOne(Object, Class<T>, String, JdbcTemplate) instead.
-	 * @param source the originating object
-	 * @param targetClass the class of the remote object
-	 * @param jdbcTemplate db access
-	 * @return
-	 */
-	public <T> T getManyToOne(Object source, Class<T> targetClass) {
-		Class<? extends Object> sourceClass = source.getClass();
-		
-		//Need to do it by field
-		for (Field field : getAllFields(sourceClass)) {
-			ManyToOne m2o = field.getAnnotation(ManyToOne.class); 
-			if (m2o != null && m2o.targetEntity().equals(targetClass)) {
-				int fk = 0;
-				try {
-					fk = (Integer)getGetter(field).invoke(source);
-				} catch (Exception e) {
-					//Misconfigured...
-					logger.error(e.getMessage(), e);
-				}
-				
-				return get(targetClass, fk);
-			}
-		}
-		
-		throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
-	}
-
-	public <T> T getManyToOne(Object source, Class<T> targetClass, String mappedBy) {
-		Class<? extends Object> sourceClass = source.getClass();
-		
-		Field field;
-		try {
-			field = sourceClass.getField(mappedBy);
-
-			ManyToOne m2o = field.getAnnotation(ManyToOne.class); 
-			if (m2o == null || !m2o.targetEntity().equals(targetClass)) {
-				throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not define a one to many relationship for " + targetClass.getName());
-			}
-			int fk = 0;
-			try {
-				fk = (Integer)getGetter(field).invoke(source);
-			} catch (Exception e) {
-				//Misconfigured...
-				logger.error(e.getMessage(), e);
-			}
-			
-			return get(targetClass, fk);
-		} catch (NoSuchFieldException | SecurityException e1) {
-			throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not exist or is not accesible for " + targetClass.getName());
-		}
-		
-	}
-
-//	private Field getField(Class<?> clazz, String column) {
-//		for (Field field : getAllFields(clazz)) {
-//			Column col = field.getAnnotation(Column.class);
-//			if (col !=null && col.name().equals(column)) {
-//				return field;
-//			}
-//		}
-//		return null;
-//	}
-
-	
-	protected String getTable(Class<?> clazz) {
-		Table table = clazz.getAnnotation(Table.class);
-		if (table != null && table.name() != null && table.name().length() > 0) 
-			return table.name();
-		
-		Entity entity = clazz.getAnnotation(Entity.class);
-		if (entity != null && entity.name() != null && entity.name().length() > 0) 
-			return entity.name();
-		
-		throw new IllegalArgumentException("No table name specified");
-	}
-	
-	protected String getIDColumn(Class<?> clazz) {
-		Field id = getIDField(clazz);
-		if (id == null) {
-			throw new IllegalArgumentException(clazz.getName() + " does not specify an id field");
-		}
-		try {
-			return id.getAnnotation(Column.class).name();
-		} catch (NullPointerException e) {
-			throw new IllegalArgumentException(clazz.getName() + "'s id field does not specify a column");
-		}
-	}
-	
-	private Serializable getID(Object source) {
-		Field id = getIDField(source.getClass());
-		try {
-			return (Serializable)getGetter(id).invoke(source);
-		} catch (IllegalAccessException | NoSuchMethodException | SecurityException | InvocationTargetException e) {
-			throw new IllegalArgumentException("Couldn't access id of " + source.getClass().getName());
-		}
-	}
-	
-	protected Method getGetter(Field field) throws NoSuchMethodException, SecurityException {
-		String name = field.getName();
-		name = getGetterName(name, field.getType().equals(Boolean.TYPE));
-		return field.getDeclaringClass().getMethod(name);
-	}
-
-	private String getGetterName(String name, boolean isBoolean) {
-		if (isBoolean) {
-			name = "is" + name.substring(0, 1).toUpperCase() + name.substring(1);
-		} else {
-			name = "get" + name.substring(0, 1).toUpperCase() + name.substring(1);
-		}
-		return name;
-	}
-	
-	protected Field getIDField(Class<?> clazz) {
-		Field id = idCache.get(clazz);
-		if (id == null) {
-			for (Field field : clazz.getDeclaredFields()) {
-				if (field.getAnnotation(Id.class) != null) {
-					id = field;
-					idCache.put(clazz, id);
-				}
-			}
-		}
-		return id;
-	}
-
-	public Method getSetter(Field field) {
-		String name = field.getName();
-		Class<?> type = field.getType();
-		
-		try {
-			return field.getDeclaringClass().getMethod("set" + name.substring(0, 1).toUpperCase() + name.substring(1), type);
-		} catch (Exception e) {
-			logger.error(e.getMessage(), e);
-			return null;
-		}
-	}
-	
-	public void insertOrUpdate(Object o) {
-
-	    Serializable id = getID(o);
-	    if (id instanceof Integer) {
-	        int intID = (Integer)id;
-    		if (intID <= 0) {
-    			insert(o);
-    		} else {
-    			update(o);
-    		}
-	    } else {
-	        if (id == null)
-	            insert(o);
-	        else 
-	            update(o);
-	    }
-	}
-	
-	public void delete(Object o) {
-		Class<?> clazz = o.getClass();
-		String query = "DELETE FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) +
-				" = ?";
-		
-		writeTemplate.update(query, getID(o));
-	}
-	
-	public <T> void update(T o) {
-		StringBuilder query = new StringBuilder();
-		
-		@SuppressWarnings("unchecked")
-		Class<T> clazz = (Class<T>)o.getClass();
-		
-		final List<Object> values = new ArrayList<>();
-		final List<Class<?>> types = new ArrayList<>();
-		Field idField = null;
-		
-		for (Field field : getAllFields(clazz)) {
-			if (field.getAnnotation(Id.class) != null) {
-				idField = field;
-				continue;
-			}
-			Column col = field.getAnnotation(Column.class);
-			
-			if (col == null)
-				continue;
-			
-			Object value = null;
-			try {
-				value = getPersistenceObject(field, o, true);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				//Shouldn't ever happen - null is OK if it does
-			}
-
-			query.append(",").append(getColumnName(field, col)).append(" = ?");
-			values.add(value);
-			types.add(field.getType());
-		}
-		
-		final String sql = "UPDATE " + getTable(clazz) + " SET "
-				+ query.substring(1) + " WHERE " + getColumnName(idField, null) + " = ?";
-
-		try {
-			values.add(getGetter(idField).invoke(o));
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			//Misconfigured class
-			logger.error("Misconfigured class", e);
-		}
-		Object[] valArray = values.toArray();
-		
-		writeTemplate.update(sql, valArray);
-		
-		ObjectCache cache = ObjectCache.get();
-		if (cache.get(clazz, getID(o)) != o) {
-			cache.set(clazz, getID(o), o);
-		}
-	}
-
-	public <T> void cautiousUpdate(T o) {
-		StringBuilder query = new StringBuilder();
-		
-		@SuppressWarnings("unchecked")
-		Class<T> clazz = (Class<T>)o.getClass();
-		
-		final List<Object> values = new ArrayList<>();
-		final List<Class<?>> types = new ArrayList<>();
-		Field idField = null;
-		
-		for (Field field : getAllFields(clazz)) {
-			if (field.getAnnotation(Id.class) != null) {
-				idField = field;
-				break;
-			}
-		}
-		
-		T existingObject = get(clazz, ((Integer)getID(o)).intValue(), false);
-
-		for (Field field : getAllFields(clazz)) {
-			if (field.getAnnotation(Id.class) != null) {
-				continue;
-			}
-			Column col = field.getAnnotation(Column.class);
-			
-			if (col == null)
-				continue;
-			
-			Object value = null;
-			try {
-				Object existingValue = getPersistenceObject(field, existingObject, false);
-				value = getPersistenceObject(field, o, true);
-				if (nullSafeEquals(value, existingValue))
-					continue;
-				
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				//Shouldn't ever happen - null is OK if it does
-			}
-
-			query.append(",").append(getColumnName(field, col)).append(" = ?");
-			values.add(value);
-			types.add(field.getType());
-		}
-		
-		//Check if there were actual updates
-		if (query.length() > 0) {
-		
-			final String sql = "UPDATE " + getTable(clazz) + " SET "
-					+ query.substring(1) + " WHERE " + getColumnName(idField, null) + " = ?";
-	
-			try {
-				values.add(getGetter(idField).invoke(o));
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				//Misconfigured class
-				logger.error("Misconfigured class", e);
-			}
-			Object[] valArray = values.toArray();
-			
-			writeTemplate.update(sql, valArray);
-		}
-		
-		ObjectCache cache = ObjectCache.get();
-		if (cache.get(clazz, getID(o)) != o) {
-			cache.set(clazz, getID(o), o);
-		}
-	}
-
-
-	private boolean nullSafeEquals(Object v1, Object v2) {
-		if (v1 == null && v2 == null)
-			return true;
-		if (v1 == null ^ v2 == null)
-			return false;
-		return v1.equals(v2);
-	}
-
-	public void insert(Object o) {
-
-		Class<?> clazz = o.getClass();
-		
-		Map<String, Object> fields = new HashMap<>();
-		Field idField = null;
-		
-		for (Field field : getAllFields(clazz)) {
-			if (field.getAnnotation(Id.class) != null && field.getAnnotation(GeneratedValue.class) != null ) {
-				idField = field;
-				continue;
-			}
-			Column col = field.getAnnotation(Column.class);
-			if (col == null)
-				continue;
-		
-			try {
-				fields.put(getColumnName(field, col), getPersistenceObject(field, o, true));
-				logger.debug("Putting " + getColumnName(field, col) + ": " +getGetter(field).invoke(o));
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				//Shouldn't ever happen - null is OK if it does
-				logger.error("Shouldn't ever happen - null is OK if it does", e);
-			}
-		}
-		
-		SimpleJdbcInsert insert = new SimpleJdbcInsert(writeTemplate);
-		insert
-			.withTableName(getTable(clazz))
-			.usingColumns(fields.keySet().toArray(new String[fields.keySet().size()]));
-		if (idField != null) {
-			insert.usingGeneratedKeyColumns(getColumnName(idField, idField.getAnnotation(Column.class)));
-			Number genKey = insert.executeAndReturnKey(fields);
-			try {
-				getSetter(idField).invoke(o, genKey.intValue());
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				//Misconfigured class
-				logger.error("Misconfigured class", e);
-			}
-		} else {
-			insert.execute(fields);
-		}
-	}
-	
-	/**
-	 * A cautious update will look for data on the existing object as well as the saving object.
-	 * @param forProcessing informs this method that the request should NOT be considered as a serialisation request
-	 */
-	protected Object getPersistenceObject(Field field, Object toPersist, boolean forProcessing) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		return getPersistenceObject(field, toPersist);
-	}
-	
-	/**
-	 * Use the getPersistenceObject(Field field, Object toPersist, boolean forProcessing) variant in preference
-	 */
-	@Deprecated
-	protected Object getPersistenceObject(Field field, Object toPersist) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		if (field.getType().isEnum()) {
-			return getGetter(field).invoke(toPersist).toString();
-		}
-		return getGetter(field).invoke(toPersist);
-	}
-
-	List<Field> getAllFields(Class<?> clazz) {
-		List<Field> fieldsList = new ArrayList<Field>();
-		Class<?> theClass = clazz;
-		while (theClass != null) {
-			for (Field field : theClass.getDeclaredFields()) {
-				fieldsList.add(field);
-			}
-			theClass = theClass.getSuperclass();
-		}
-		return fieldsList;
-	}
-
-	List<Method> getAllMethods(Class<?> clazz) {
-		List<Method> methodsList = new ArrayList<Method>();
-		Class<?> theClass = clazz;
-		while (theClass != null) {
-			for (Method method : theClass.getDeclaredMethods()) {
-				methodsList.add(method);
-			}
-			theClass = theClass.getSuperclass();
-		}
-		return methodsList;
-	}
-
-	private String getColumnName(Field field, Column col) {
-		if (col == null)
-			col = field.getAnnotation(Column.class);
-		if (col == null)
-			return null;
-		
-		if (col.name() != null && col.name().length() > 0) {
-			return col.name(); 
-		}
-		
-		return field.getName();
-	}
-	
-	/**
-	 * Creates a row mapper used to convert DB data to the object model.
-	 * @param clazz the class which is to be created
-	 */
-	public <T> RowMapper<T> getRowMapper(Class<T> clazz) {
-		return new BeanRowMapper<>(clazz, this);
-	}
-
-	public <T> T get(Class<T> clazz, int id) {
-		return get(clazz, id, true);
-	}
-	public <T> T get(Class<T> clazz, int id, boolean useCache) {
-		T t = useCache ? ObjectCache.get().get(clazz, id) : null;
-		if (t == null) {
-			t = readTemplate.queryForObject("SELECT * FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) + " = ?", getRowMapper(clazz), id);
-			if (useCache) 
-				ObjectCache.get().set(clazz, id, t);
-		}
-		return t;
-	}
-	
-	/**
-	 * Creates a query that will find all of the objects represented by targetClass where
-	 * foreign keys exist to the given constraint objects.  Results are only guaranteed
-	 * if the target class has exactly ONE foreign key to each given object.
-	 * 
-	 * @param clazz
-	 * @param constraints
-	 * @return
-	 */
-	public <T> List<T> queryFor(Class<T> targetClass, Object ... constraints) {
-		StringBuffer query = new StringBuffer().append("SELECT * FROM ").append(getTable(targetClass)).append(" WHERE ");
-		
-		Object[] ids = new Object[constraints.length];
-		outer: for (int i=0; i<constraints.length; i++) {
-			Object o = constraints[i];
-			Class<?> constraintClass = o.getClass();
-			for (Field field : getAllFields(targetClass)) {
-				ManyToOne m2o = field.getAnnotation(ManyToOne.class); 
-				if (m2o != null && m2o.targetEntity().equals(constraintClass)) {
-					
-					query.append(getColumnName(field, null)).append(" = ?");
-					ids[i] = getID(o);
-					if (i < constraints.length-1) {
-						query.append(" AND ");
-					}
-					continue outer;
-				}
-			}
-			throw new IllegalArgumentException(targetClass + " does not specify a many-to-one join with " + constraintClass);
-		}
-		return readTemplate.query(query.toString(), getRowMapper(targetClass), ids);
-	}
-	
-	public void removeManyToMany(Object o1, Object o2) {
-		Class<?> sourceClass = o1.getClass();
-		Class<?> targetClass = o2.getClass();
-		
-		ManyToMany sourceM2m = findManyToMany(sourceClass, targetClass);
-		ManyToMany targetM2m = findManyToMany(targetClass, sourceClass);
-		
-		String sourceMapped = sourceM2m.mappedBy();
-		String mappingTable = sourceMapped.substring(0, sourceMapped.indexOf("."));
-		String targetKey = sourceMapped.substring(sourceMapped.indexOf(".") + 1);
-		
-		String sourceKey = targetM2m.mappedBy();
-		sourceKey = sourceKey.substring(sourceKey.indexOf(".") + 1);
-
-		String query = "DELETE FROM " + mappingTable + " WHERE " + targetKey + " = ? AND " + sourceKey + " = ?";
-
-		writeTemplate.update(query, getID(o2), getID(o1));
-		
-	}
-	
-	public void addManyToMany(Object o1, Object o2) {
-		Class<?> sourceClass = o1.getClass();
-		Class<?> targetClass = o2.getClass();
-		
-		ManyToMany sourceM2m = findManyToMany(sourceClass, targetClass);
-		ManyToMany targetM2m = findManyToMany(targetClass, sourceClass);
-		
-		String sourceMapped = sourceM2m.mappedBy();
-		String mappingTable = sourceMapped.substring(0, sourceMapped.indexOf("."));
-		String targetKey = sourceMapped.substring(sourceMapped.indexOf(".") + 1);
-		
-		String sourceKey = targetM2m.mappedBy();
-		sourceKey = sourceKey.substring(sourceKey.indexOf(".") + 1);
-
-		String query = "INSERT INTO " + mappingTable + "(" + sourceKey + ", " + targetKey + ") VALUES (?, ?)";
-
-		writeTemplate.update(query, getID(o1), getID(o2));
-	}
-
-	public <T> List<T> getAll(Class<T> clazz) {
-		List<T> list = readTemplate.query("SELECT * FROM " + getTable(clazz), getRowMapper(clazz));
-		for (T t : list) 
-			ObjectCache.get().set(clazz, getID(t), t);
-
-		return list;
-	}
-	
-	public void close() {
-		ObjectCache.terminate();
-	}
-}
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.jumbletree.jdbcutils.EntityDescriptor.ManyToManyRelation;
+
+public class JDBCUtils {
+
+	private final Logger logger = LoggerFactory.getLogger(JDBCUtils.class);
+	
+	private JdbcTemplate readTemplate;
+	private JdbcTemplate writeTemplate;
+
+	private final ConcurrentHashMap<Class<?>, RowMapper<?>> rowMappers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Class<?>, InsertPlan> insertPlans = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Class<?>, String> updateSql = new ConcurrentHashMap<>();
+
+	private int batchSize = 500;
+	private int fetchSize = 1000;
+	private long missingTimeToLive = TimeUnit.SECONDS.toMillis(5);
+	private boolean dirtyTracking = false;
+	private boolean arrayParameters = false;
+	private SharedCache sharedCache;
+	private InvalidationBus invalidationBus;
+	private ReadReplicas readReplicas;
+	private JDBCUtilsListener listener;
+	
+	public JDBCUtils(JdbcTemplate template) {
+		this(template, template);
+	}
+	
+	public JDBCUtils(JdbcTemplate readTemplate, JdbcTemplate writeTemplate) {
+		this.readTemplate = readTemplate;
+		this.writeTemplate = writeTemplate;
+	}
+
+	/**
+	 * Writes to the given primary and spreads reads over the replicas, falling back to the primary when none 
+	 * are available - see {@link ReadReplicas}
+	 */
+	public JDBCUtils(JdbcTemplate primary, ReadReplicas readReplicas) {
+		this(primary, primary);
+		this.readReplicas = readReplicas;
+	}
+	
+	private ManyToManyMapping getManyToManyMapping(Class<?> sourceClass, Class<?> targetClass) {
+		ManyToManyRelation sourceM2m = EntityDescriptor.of(sourceClass).getManyToMany(targetClass);
+		ManyToManyRelation targetM2m = EntityDescriptor.of(targetClass).getManyToMany(sourceClass);
+		
+		if (sourceM2m == null || targetM2m == null) {
+			throw new IllegalArgumentException("Both " + sourceClass + " and " + targetClass + " must specify many to many details, but one or both does not");
+		}
+		return new ManyToManyMapping(sourceM2m, targetM2m);
+	}
+	
+	private ManyToManyMapping getManyToManyMapping(Class<?> sourceClass, Class<?> targetClass, String mappingFrom, String mappingTo) {
+		ManyToManyRelation sourceM2m = EntityDescriptor.of(sourceClass).getManyToMany(targetClass, mappingFrom);
+		ManyToManyRelation targetM2m = EntityDescriptor.of(targetClass).getManyToMany(sourceClass, mappingTo);
+		
+		if (sourceM2m == null || targetM2m == null) {
+			throw new IllegalArgumentException("Both " + sourceClass + " and " + targetClass + " must specify many to many details, but one or both does not");
+		}
+		return new ManyToManyMapping(sourceM2m, targetM2m);
+	}
+	/**
+	 * Returns a list of objects associated with another via a many-to-many relationship.  The
+	 * relationship must be defined on the source class
+	 * @param source the originating object
+	 * @param targetClass the class of the remote object
+	 * @param jdbcTemplate db access
+	 * @return
+	 */
+	public <T> List<T> getManyToMany(Object source, Class<T> targetClass) {
+		Class<?> sourceClass = source.getClass();
+		
+		ManyToManyMapping mapping = getManyToManyMapping(sourceClass, targetClass);
+		
+		String query = "SELECT t.* FROM " + getTable(targetClass) + " t JOIN " + mapping.getTable() + " m ON t."
+				+ getIDColumn(targetClass) + " = m." + mapping.getTargetKey() + " WHERE m." + mapping.getSourceKey() + " = ?";
+		
+		return read(targetClass, Operation.GET_MANY_TO_MANY, t -> t.query(query, getRowMapper(targetClass), getID(source)));
+	}
+	
+	/**
+	 * Returns a list of objects associated with another via a many-to-many relationship.  The
+	 * relationship must be defined on the source class.  This method enabled multiple many-to-many
+	 * relationships to existing within the one class by allowing the specification of precisely 
+	 * which relationship to use
+	 * @param source the originating object
+	 * @param targetClass the class of the remote object
+	 * @param jdbcTemplate db access
+	 * @return
+	 */
+	public <T> List<T> getManyToMany(Object source, Class<T> targetClass, String mappingFrom, String mappingTo) {
+		Class<?> sourceClass = source.getClass();
+		
+		ManyToManyMapping mapping = getManyToManyMapping(sourceClass, targetClass, mappingFrom, mappingTo);
+		
+		String query = "SELECT t.* FROM " + getTable(targetClass) + " t JOIN " + mapping.getTable() + " m ON t."
+				+ getIDColumn(targetClass) + " = m." + mapping.getTargetKey() + " WHERE m." + mapping.getSourceKey() + " = ?";
+		
+		return read(targetClass, Operation.GET_MANY_TO_MANY, t -> t.query(query, getRowMapper(targetClass), getID(source)));
+	}
+
+	/**
+	 * Batch form of {@link #getManyToMany(Object, Class)}: runs one join against the mapping table per chunk
+	 * of source ids, rather than one per source, and groups the rows by the mapping table's source key.  
+	 * Targets shared between sources are the same instance, taken from the {@link ObjectCache} where present.
+	 * @param sources the originating objects, which must all be of the same class
+	 * @param targetClass the class of the remote objects
+	 * @return a map from each source to its targets, in the order the sources were given
+	 */
+	public <S, T> Map<S, List<T>> getManyToManyBatch(Collection<S> sources, Class<T> targetClass) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		return getManyToManyBatch(sources, sourceClass, targetClass, getManyToManyMapping(sourceClass, targetClass));
+	}
+
+	/**
+	 * Batch form of {@link #getManyToMany(Object, Class, String, String)}
+	 */
+	public <S, T> Map<S, List<T>> getManyToManyBatch(Collection<S> sources, Class<T> targetClass, String mappingFrom, String mappingTo) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		return getManyToManyBatch(sources, sourceClass, targetClass, getManyToManyMapping(sourceClass, targetClass, mappingFrom, mappingTo));
+	}
+
+	private <S, T> Map<S, List<T>> getManyToManyBatch(Collection<S> sources, Class<?> sourceClass, Class<T> targetClass, ManyToManyMapping mapping) {
+		Class<?> idType = getIDField(sourceClass).getType();
+		Map<S, List<T>> results = new LinkedHashMap<>();
+		Map<Serializable, List<List<T>>> byId = new HashMap<>();
+		for (S source : sources) {
+			List<T> targets = new ArrayList<>();
+			results.put(source, targets);
+			byId.computeIfAbsent(getID(source), id -> new ArrayList<>()).add(targets);
+		}
+
+		ObjectCache cache = ObjectCache.get();
+		RowMapper<T> mapper = getRowMapper(targetClass);
+		String query = "SELECT t.*, m." + mapping.getSourceKey() + " AS jdbcutils_source FROM " + getTable(targetClass) + " t JOIN " 
+				+ mapping.getTable() + " m ON t." + getIDColumn(targetClass) + " = m." + mapping.getTargetKey() + " WHERE ";
+		for (List<Object> chunk : chunk(byId.keySet())) {
+			List<Object> args = new ArrayList<>(chunk.size());
+			int[] row = new int[1];
+			String sql = query + keyCondition("m." + mapping.getSourceKey(), idType, chunk, args);
+			read(targetClass, Operation.GET_MANY_TO_MANY, template -> {
+				template.query(sql, rs -> {
+					T t = register(cache, targetClass, mapper.mapRow(rs, row[0]++));
+					List<List<T>> lists = byId.get((Serializable)toIdType(idType, rs.getObject("jdbcutils_source")));
+					if (lists != null) {
+						for (List<T> targets : lists) {
+							targets.add(t);
+						}
+					}
+				}, args.toArray());
+				return row[0];
+			});
+		}
+		return results;
+	}
+
+	/**
+	 * Returns a list of objects associated with another via a one-to-many relationship.  The
+	 * relationship must be defined on the source class and there must be only ONE relationship of the given target type.
+	 * If multiple relationships exist, use getOneToMany(Object, Class<T>, String, JdbcTemplate) instead.
+	 * @param source the originating object
+	 * @param targetClass the class of the remote object
+	 * @param jdbcTemplate db access
+	 * @return
+	 */
+	public <T> List<T> getOneToMany(Object source, Class<T> targetClass) {
+		Class<? extends Object> sourceClass = source.getClass();
+		
+		//Do a reverse lookup
+		EntityProperty field = EntityDescriptor.of(targetClass).getManyToOne(sourceClass);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		String targetTable = getTable(targetClass);
+		//Now construct a query 
+
+		String query = "SELECT t.* FROM " + targetTable + " t WHERE t." + field.getColumn() + " = ?";
+		return read(targetClass, Operation.GET_ONE_TO_MANY, t -> t.query(query, getRowMapper(targetClass), getID(source)));
+	}
+
+	/**
+	 * Returns a list of objects associated with another via a one-to-many relationship on the given field
+	 * @param source the originating object
+	 * @param targetClass the class of the remote object
+	 * @param mappedBy the field that holds the foreign key (in the foreign class)
+	 * @param jdbcTemplate db access
+	 * @return
+	 */
+	public <T> List<T> getOneToMany(Object source, Class<T> targetClass, String mappedBy) {
+		Class<? extends Object> sourceClass = source.getClass();
+		
+		EntityProperty field = EntityDescriptor.of(targetClass).getProperty(mappedBy);
+		if (field == null) {
+			throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not exist or is not accessible");
+		}
+		if (field.getManyToOneTarget() == null || !field.getManyToOneTarget().equals(sourceClass)) {
+			throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not describe a many to one of type " + source.getClass());
+		}
+		String targetTable = getTable(targetClass);
+		//Now construct a query 
+
+		String query = "SELECT t.* FROM " + targetTable + " t WHERE t." + field.getColumn() + " = ?";
+		return read(targetClass, Operation.GET_ONE_TO_MANY, t -> t.query(query, getRowMapper(targetClass), getID(source)));
+	}
+
+	/**
+	 * Returns an objects associated with another via a many-to-one relationship.  The
+	 * relationship must be defined on the source class and there must be only ONE relationship of the given target type.
+	 * If multiple relationships exist, use getManyToOne(Object, Class<T>, String, JdbcTemplate) instead.
+	 * @param source the originating object
+	 * @param targetClass the class of the remote object
+	 * @param jdbcTemplate db access
+	 * @return
+	 */
+	public <T> T getManyToOne(Object source, Class<T> targetClass) {
+		Class<? extends Object> sourceClass = source.getClass();
+		
+		EntityProperty field = EntityDescriptor.of(sourceClass).getManyToOne(targetClass);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return get(targetClass, getForeignKey(field, source), true, Operation.GET_MANY_TO_ONE);
+	}
+
+	public <T> T getManyToOne(Object source, Class<T> targetClass, String mappedBy) {
+		Class<? extends Object> sourceClass = source.getClass();
+		
+		EntityProperty field = EntityDescriptor.of(sourceClass).getProperty(mappedBy);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not exist or is not accesible for " + targetClass.getName());
+		}
+		if (field.getManyToOneTarget() == null || !field.getManyToOneTarget().equals(targetClass)) {
+			throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return get(targetClass, getForeignKey(field, source), true, Operation.GET_MANY_TO_ONE);
+	}
+
+	private int getForeignKey(EntityProperty field, Object source) {
+		try {
+			return (Integer)field.get(source);
+		} catch (Exception e) {
+			//Misconfigured...
+			logger.error(e.getMessage(), e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Batch form of {@link #getOneToMany(Object, Class)}: loads the targets for all of the sources with one 
+	 * query per chunk of source ids rather than one per source.  Loaded targets are registered in the
+	 * {@link ObjectCache}, and where the cache already holds an object that instance is used.
+	 * @param sources the originating objects, which must all be of the same class
+	 * @param targetClass the class of the remote objects
+	 * @return a map from each source to its targets, in the order the sources were given
+	 */
+	public <S, T> Map<S, List<T>> getOneToManyBatch(Collection<S> sources, Class<T> targetClass) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		EntityProperty field = EntityDescriptor.of(targetClass).getManyToOne(sourceClass);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return getOneToManyBatch(sources, sourceClass, targetClass, field);
+	}
+
+	/**
+	 * Batch form of {@link #getOneToMany(Object, Class, String)}
+	 * @param sources the originating objects, which must all be of the same class
+	 * @param targetClass the class of the remote objects
+	 * @param mappedBy the field that holds the foreign key (in the foreign class)
+	 * @return a map from each source to its targets, in the order the sources were given
+	 */
+	public <S, T> Map<S, List<T>> getOneToManyBatch(Collection<S> sources, Class<T> targetClass, String mappedBy) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		EntityProperty field = EntityDescriptor.of(targetClass).getProperty(mappedBy);
+		if (field == null) {
+			throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not exist or is not accessible");
+		}
+		if (field.getManyToOneTarget() == null || !field.getManyToOneTarget().equals(sourceClass)) {
+			throw new IllegalArgumentException(targetClass + "." + mappedBy + " does not describe a many to one of type " + sourceClass);
+		}
+		return getOneToManyBatch(sources, sourceClass, targetClass, field);
+	}
+
+	private <S, T> Map<S, List<T>> getOneToManyBatch(Collection<S> sources, Class<?> sourceClass, Class<T> targetClass, EntityProperty field) {
+		Class<?> idType = getIDField(sourceClass).getType();
+		Map<S, List<T>> results = new LinkedHashMap<>();
+		Map<Serializable, List<List<T>>> byId = new HashMap<>();
+		for (S source : sources) {
+			List<T> targets = new ArrayList<>();
+			results.put(source, targets);
+			byId.computeIfAbsent(getID(source), id -> new ArrayList<>()).add(targets);
+		}
+
+		ObjectCache cache = ObjectCache.get();
+		String query = "SELECT t.* FROM " + getTable(targetClass) + " t WHERE ";
+		for (List<Object> chunk : chunk(byId.keySet())) {
+			List<Object> args = new ArrayList<>(chunk.size());
+			String sql = query + keyCondition("t." + field.getColumn(), idType, chunk, args);
+			for (T t : read(targetClass, Operation.GET_ONE_TO_MANY, template -> template.query(sql, getRowMapper(targetClass), args.toArray()))) {
+				t = register(cache, targetClass, t);
+				List<List<T>> lists = byId.get((Serializable)toIdType(idType, getForeignKeyValue(field, t)));
+				if (lists != null) {
+					for (List<T> targets : lists) {
+						targets.add(t);
+					}
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Batch form of {@link #getManyToOne(Object, Class)}: collects the foreign keys of all of the sources and 
+	 * loads the targets with {@link #getMany(Class, Collection)}, so cached targets cost nothing and the rest
+	 * are fetched in chunks.
+	 * @param sources the originating objects, which must all be of the same class
+	 * @param targetClass the class of the remote object
+	 * @return a map from each source to its target (null if there is none), in the order the sources were given
+	 */
+	public <S, T> Map<S, T> getManyToOneBatch(Collection<S> sources, Class<T> targetClass) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		EntityProperty field = EntityDescriptor.of(sourceClass).getManyToOne(targetClass);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return getManyToOneBatch(sources, targetClass, field);
+	}
+
+	/**
+	 * Batch form of {@link #getManyToOne(Object, Class, String)}
+	 * @param sources the originating objects, which must all be of the same class
+	 * @param targetClass the class of the remote object
+	 * @param mappedBy the field that holds the foreign key (in the source class)
+	 * @return a map from each source to its target (null if there is none), in the order the sources were given
+	 */
+	public <S, T> Map<S, T> getManyToOneBatch(Collection<S> sources, Class<T> targetClass, String mappedBy) {
+		if (sources.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		Class<?> sourceClass = sources.iterator().next().getClass();
+		EntityProperty field = EntityDescriptor.of(sourceClass).getProperty(mappedBy);
+		if (field == null) {
+			throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not exist or is not accesible for " + targetClass.getName());
+		}
+		if (field.getManyToOneTarget() == null || !field.getManyToOneTarget().equals(targetClass)) {
+			throw new IllegalArgumentException(sourceClass + "." + mappedBy + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return getManyToOneBatch(sources, targetClass, field);
+	}
+
+	private <S, T> Map<S, T> getManyToOneBatch(Collection<S> sources, Class<T> targetClass, EntityProperty field) {
+		Class<?> idType = getIDField(targetClass).getType();
+		Map<S, Serializable> keys = new LinkedHashMap<>();
+		for (S source : sources) {
+			keys.put(source, (Serializable)toIdType(idType, getForeignKeyValue(field, source)));
+		}
+
+		List<Serializable> ids = new ArrayList<>();
+		for (Serializable id : keys.values()) {
+			if (id != null) {
+				ids.add(id);
+			}
+		}
+		Map<Serializable, T> targets = getMany(targetClass, ids);
+
+		Map<S, T> results = new LinkedHashMap<>();
+		for (Map.Entry<S, Serializable> entry : keys.entrySet()) {
+			results.put(entry.getKey(), entry.getValue() == null ? null : targets.get(entry.getValue()));
+		}
+		return results;
+	}
+
+	private Object getForeignKeyValue(EntityProperty field, Object source) {
+		try {
+			return field.get(source);
+		} catch (NoSuchMethodException e) {
+			//Misconfigured...
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a loaded object to the cache, returning the instance already cached for its id if there is one
+	 */
+	<T> T register(ObjectCache cache, Class<T> clazz, T t) {
+		return cache.setIfAbsent(clazz, getID(t), t);
+	}
+
+//	private Field getField(Class<?> clazz, String column) {
+//		for (Field field : getAllFields(clazz)) {
+//			Column col = field.getAnnotation(Column.class);
+//			if (col !=null && col.name().equals(column)) {
+//				return field;
+//			}
+//		}
+//		return null;
+//	}
+
+	
+	protected String getTable(Class<?> clazz) {
+		return EntityDescriptor.of(clazz).getTable();
+	}
+	
+	protected String getIDColumn(Class<?> clazz) {
+		return EntityDescriptor.of(clazz).getIdColumn();
+	}
+	
+	private Serializable getID(Object source) {
+		return EntityDescriptor.of(source.getClass()).getId(source);
+	}
+	
+	protected Method getGetter(Field field) throws NoSuchMethodException, SecurityException {
+		EntityProperty property = EntityDescriptor.of(field.getDeclaringClass()).getProperty(field);
+		if (property != null) {
+			return property.getGetter();
+		}
+		return field.getDeclaringClass().getMethod(EntityProperty.getGetterName(field.getName(), field.getType().equals(Boolean.TYPE)));
+	}
+
+	protected Field getIDField(Class<?> clazz) {
+		EntityProperty id = EntityDescriptor.of(clazz).getIdProperty();
+		return id == null ? null : id.getField();
+	}
+
+	public Method getSetter(Field field) {
+		EntityProperty property = EntityDescriptor.of(field.getDeclaringClass()).getProperty(field);
+		if (property != null) {
+			return property.getSetter();
+		}
+		try {
+			return field.getDeclaringClass().getMethod(EntityProperty.getSetterName(field.getName()), field.getType());
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+	}
+	
+	public void insertOrUpdate(Object o) {
+
+	    Serializable id = getID(o);
+	    if (id instanceof Integer) {
+	        int intID = (Integer)id;
+    		if (intID <= 0) {
+    			insert(o);
+    		} else {
+    			update(o);
+    		}
+	    } else {
+	        if (id == null)
+	            insert(o);
+	        else 
+	            update(o);
+	    }
+	}
+	
+	public void delete(Object o) {
+		Class<?> clazz = o.getClass();
+		String query = "DELETE FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) +
+				" = ?";
+		
+		Serializable id = getID(o);
+		EntityProperty version = EntityDescriptor.of(clazz).getVersionProperty();
+		if (version != null) {
+			Object current = getVersion(version, o);
+			if (execute(clazz, Operation.DELETE, () -> writeTemplate.update(query + " AND " + version.getColumn() + " = ?", id, current)) == 0) {
+				throw new StaleEntityException(o, id, current);
+			}
+		} else {
+			execute(clazz, Operation.DELETE, () -> writeTemplate.update(query, id));
+		}
+		ObjectCache cache = ObjectCache.get();
+		cache.remove(clazz, id);
+		cache.removeSnapshot(o);
+		written(clazz, id);
+	}
+
+	/**
+	 * Deletes all of the given objects, with one DELETE per chunk of ids for each entity class.  An object 
+	 * given more than once is deleted once.
+	 * @return the total number of rows deleted
+	 */
+	public int deleteAll(Collection<?> objects) {
+		Set<Object> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Object> once = new ArrayList<>(objects.size());
+		for (Object o : objects) {
+			if (distinct.add(o)) {
+				once.add(o);
+			}
+		}
+		int count = 0;
+		for (Map.Entry<Class<Object>, List<Object>> entry : groupByClass(once).entrySet()) {
+			if (EntityDescriptor.of(entry.getKey()).getVersionProperty() != null) {
+				count += deleteVersioned(entry.getKey(), entry.getValue());
+				continue;
+			}
+			List<Serializable> ids = new ArrayList<>(entry.getValue().size());
+			for (Object o : entry.getValue()) {
+				ids.add(getID(o));
+			}
+			count += deleteByIds(entry.getKey(), ids);
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes versioned objects in JDBC batches, each row only if it still has the object's version
+	 */
+	private int deleteVersioned(Class<?> clazz, List<Object> group) {
+		EntityProperty version = EntityDescriptor.of(clazz).getVersionProperty();
+		String query = "DELETE FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) + " = ? AND " + version.getColumn() + " = ?";
+		int[][] batchCounts = execute(clazz, Operation.DELETE, () -> writeTemplate.batchUpdate(query, group, batchSize, 
+				(ps, o) -> new ArgumentPreparedStatementSetter(new Object[] { getID(o), getVersion(version, o) }).setValues(ps)));
+
+		ObjectCache cache = ObjectCache.get();
+		StaleEntityException stale = null;
+		int count = 0;
+		int i = 0;
+		for (int[] batch : batchCounts) {
+			for (int rows : batch) {
+				Object o = group.get(i++);
+				Serializable id = getID(o);
+				if (rows == 0) {
+					if (stale == null) {
+						stale = new StaleEntityException(o, id, getVersion(version, o));
+					}
+					continue;
+				}
+				//Drivers may only report that the statement succeeded
+				count += Math.max(rows, 1);
+				cache.remove(clazz, id);
+				cache.removeSnapshot(o);
+				written(clazz, id);
+			}
+		}
+		if (stale != null) {
+			throw stale;
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes the rows with the given ids, using chunked <code>IN (...)</code> lists, or 
+	 * <code>= ANY(?)</code> arrays if {@link #setArrayParameters(boolean)} is enabled.
+	 * @return the total number of rows deleted
+	 */
+	public int deleteByIds(Class<?> clazz, Collection<?> ids) {
+		String idColumn = getIDColumn(clazz);
+		Class<?> idType = getIDField(clazz).getType();
+		int count = 0;
+		for (List<Object> chunk : chunk(ids)) {
+			List<Object> args = new ArrayList<>(chunk.size());
+			String query = "DELETE FROM " + getTable(clazz) + " WHERE " + keyCondition(idColumn, idType, chunk, args);
+			count += execute(clazz, Operation.DELETE, () -> writeTemplate.update(query, args.toArray()));
+		}
+
+		ObjectCache cache = ObjectCache.get();
+		for (Object requested : ids) {
+			//Cached under the id property's type, so a Long for an int id would miss
+			Serializable id = (Serializable)toIdType(idType, requested);
+			cache.remove(clazz, id);
+			written(clazz, id);
+		}
+		return count;
+	}
+	
+	public <T> void update(T o) {
+		@SuppressWarnings("unchecked")
+		Class<T> clazz = (Class<T>)o.getClass();
+		
+		Serializable id = getID(o);
+		int count = execute(clazz, Operation.UPDATE, () -> writeTemplate.update(getUpdateSql(clazz), getUpdateValues(o, id)));
+		EntityProperty version = EntityDescriptor.of(clazz).getVersionProperty();
+		if (version != null) {
+			Object current = getVersion(version, o);
+			if (count == 0) {
+				throw new StaleEntityException(o, id, current);
+			}
+			setVersion(version, o, nextVersion(version, current));
+		}
+		
+		ObjectCache cache = ObjectCache.get();
+		if (cache.get(clazz, id) != o) {
+			cache.set(clazz, id, o);
+		}
+		if (dirtyTracking) {
+			snapshot(o);
+		}
+		written(clazz, id);
+	}
+
+	/**
+	 * Updates all of the given objects, reusing one prepared UPDATE per entity class and sending the rows in 
+	 * JDBC batches of up to {@link #getBatchSize()}.  An object given more than once is updated once, as a 
+	 * second row would find the version the first had already moved on.
+	 * @return the update count for each object, in the order given
+	 */
+	public int[] updateAll(Collection<?> objects) {
+		List<Object> distinct = new ArrayList<>(objects.size());
+		Map<Object, Integer> positions = new IdentityHashMap<>();
+		int[] given = new int[objects.size()];
+		int n = 0;
+		for (Object o : objects) {
+			Integer position = positions.get(o);
+			if (position == null) {
+				position = distinct.size();
+				positions.put(o, position);
+				distinct.add(o);
+			}
+			given[n++] = position;
+		}
+
+		int[] distinctCounts = new int[distinct.size()];
+		updateDistinct(distinct, positions, distinctCounts);
+		int[] counts = new int[given.length];
+		for (int i = 0; i < given.length; i++) {
+			counts[i] = distinctCounts[given[i]];
+		}
+		return counts;
+	}
+
+	/**
+	 * Updates objects that each appear once, filling in their counts at their positions
+	 */
+	private void updateDistinct(List<Object> distinct, Map<Object, Integer> positions, int[] counts) {
+		for (Map.Entry<Class<Object>, List<Object>> entry : groupByClass(distinct).entrySet()) {
+			Class<Object> clazz = entry.getKey();
+			List<Object> group = entry.getValue();
+			int[][] batchCounts = execute(clazz, Operation.UPDATE, () -> writeTemplate.batchUpdate(getUpdateSql(clazz), group, batchSize, 
+					(ps, o) -> new ArgumentPreparedStatementSetter(getUpdateValues(o, getID(o))).setValues(ps)));
+
+			EntityProperty version = EntityDescriptor.of(clazz).getVersionProperty();
+			ObjectCache cache = ObjectCache.get();
+			StaleEntityException stale = null;
+			int i = 0;
+			for (int[] batch : batchCounts) {
+				for (int count : batch) {
+					Object o = group.get(i++);
+					counts[positions.get(o)] = count;
+					Serializable id = getID(o);
+					if (version != null) {
+						Object current = getVersion(version, o);
+						if (count == 0) {
+							if (stale == null) {
+								stale = new StaleEntityException(o, id, current);
+							}
+							continue;
+						}
+						setVersion(version, o, nextVersion(version, current));
+					}
+					//Rows that were written are published even if another in the batch was stale
+					if (cache.get(clazz, id) != o) {
+						cache.set(clazz, id, o);
+					}
+					if (dirtyTracking) {
+						snapshot(o);
+					}
+					written(clazz, id);
+				}
+			}
+			if (stale != null) {
+				throw stale;
+			}
+		}
+	}
+
+	private String getUpdateSql(Class<?> clazz) {
+		String sql = updateSql.get(clazz);
+		if (sql == null) {
+			sql = updateSql.computeIfAbsent(clazz, c -> {
+				StringBuilder query = new StringBuilder();
+				for (EntityProperty property : EntityDescriptor.of(c).getUpdateColumns()) {
+					query.append(",").append(property.getColumn()).append(" = ?");
+				}
+				EntityProperty version = EntityDescriptor.of(c).getVersionProperty();
+				return "UPDATE " + getTable(c) + " SET "
+						+ query.substring(1) + " WHERE " + getIDColumn(c) + " = ?"
+						+ (version == null ? "" : " AND " + version.getColumn() + " = ?");
+			});
+		}
+		return sql;
+	}
+
+	/**
+	 * The parameters for the update SQL - the column values followed by the id, and for a versioned class the 
+	 * new version in place of the version column's value and the current version at the end
+	 */
+	private Object[] getUpdateValues(Object o, Serializable id) {
+		EntityDescriptor<?> descriptor = EntityDescriptor.of(o.getClass());
+		List<EntityProperty> columns = descriptor.getUpdateColumns();
+		EntityProperty version = descriptor.getVersionProperty();
+		Object[] values = new Object[columns.size() + (version == null ? 1 : 2)];
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i) == version) {
+				Object current = getVersion(version, o);
+				values[i] = nextVersion(version, current);
+				values[columns.size() + 1] = current;
+				continue;
+			}
+			try {
+				values[i] = getPersistenceObject(columns.get(i).getField(), o, true);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+				//Shouldn't ever happen - null is OK if it does
+			}
+		}
+		values[columns.size()] = id;
+		return values;
+	}
+
+	public <T> void cautiousUpdate(T o) {
+		StringBuilder query = new StringBuilder();
+		
+		@SuppressWarnings("unchecked")
+		Class<T> clazz = (Class<T>)o.getClass();
+		EntityDescriptor<T> descriptor = EntityDescriptor.of(clazz);
+		
+		final List<Object> values = new ArrayList<>();
+		
+		Serializable id = getID(o);
+		//From the primary, as a lagging replica would give a stale base to compare against
+		String select = "SELECT * FROM " + descriptor.getTable() + " WHERE " + descriptor.getIdColumn() + " = ?";
+		T existingObject = execute(clazz, Operation.UPDATE, () -> writeTemplate.queryForObject(select, getRowMapper(clazz), id));
+
+		EntityProperty version = descriptor.getVersionProperty();
+		for (EntityProperty property : descriptor.getUpdateColumns()) {
+			if (property == version) {
+				continue;
+			}
+			Object value = null;
+			try {
+				Object existingValue = getPersistenceObject(property.getField(), existingObject, false);
+				value = getPersistenceObject(property.getField(), o, true);
+				if (nullSafeEquals(value, existingValue))
+					continue;
+				
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+				//Shouldn't ever happen - null is OK if it does
+			}
+
+			query.append(",").append(property.getColumn()).append(" = ?");
+			values.add(value);
+		}
+		
+		//Check if there were actual updates
+		if (query.length() > 0) {
+			updateColumns(descriptor, o, id, query, values);
+		}
+		
+		ObjectCache cache = ObjectCache.get();
+		if (cache.get(clazz, id) != o) {
+			cache.set(clazz, id, o);
+		}
+		if (dirtyTracking) {
+			snapshot(o);
+		}
+	}
+
+
+	/**
+	 * Updates only the columns that have changed since the object was loaded or last written, by comparing it 
+	 * with the snapshot taken then - see {@link #setDirtyTracking(boolean)}.  No statement is run if nothing has 
+	 * changed.  Without a snapshot this falls back to {@link #cautiousUpdate(Object)}.
+	 */
+	public <T> void updateDirty(T o) {
+		ObjectCache cache = ObjectCache.get();
+		Object[] snapshot = cache.getSnapshot(o);
+		if (snapshot == null) {
+			cautiousUpdate(o);
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		Class<T> clazz = (Class<T>)o.getClass();
+		EntityDescriptor<T> descriptor = EntityDescriptor.of(clazz);
+		List<EntityProperty> columns = descriptor.getUpdateColumns();
+		EntityProperty version = descriptor.getVersionProperty();
+		Object[] current = getSnapshotValues(o);
+
+		StringBuilder query = new StringBuilder();
+		List<Object> values = new ArrayList<>();
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i) == version || snapshotEquals(current[i], snapshot[i])) {
+				continue;
+			}
+			EntityProperty property = columns.get(i);
+			Object value = null;
+			try {
+				value = getPersistenceObject(property.getField(), o, true);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+				//Shouldn't ever happen - null is OK if it does
+			}
+			query.append(",").append(property.getColumn()).append(" = ?");
+			values.add(value);
+		}
+
+		Serializable id = getID(o);
+		if (query.length() > 0) {
+			updateColumns(descriptor, o, id, query, values);
+			snapshot(o);
+		}
+		if (cache.get(clazz, id) != o) {
+			cache.set(clazz, id, o);
+		}
+	}
+
+	/**
+	 * Runs an update of the given columns, which for a versioned class is made conditional on the version and 
+	 * bumps it
+	 * @param query the SET clauses, each preceded by a comma
+	 * @param values the values for the SET clauses
+	 */
+	private void updateColumns(EntityDescriptor<?> descriptor, Object o, Serializable id, StringBuilder query, List<Object> values) {
+		EntityProperty version = descriptor.getVersionProperty();
+		Object current = null;
+		Object next = null;
+		if (version != null) {
+			current = getVersion(version, o);
+			next = nextVersion(version, current);
+			query.append(",").append(version.getColumn()).append(" = ?");
+			values.add(next);
+		}
+		String sql = "UPDATE " + descriptor.getTable() + " SET " + query.substring(1) + " WHERE " + descriptor.getIdColumn() + " = ?";
+		values.add(id);
+		if (version != null) {
+			sql += " AND " + version.getColumn() + " = ?";
+			values.add(current);
+		}
+
+		String statement = sql;
+		int count = execute(descriptor.getType(), Operation.UPDATE, () -> writeTemplate.update(statement, values.toArray()));
+		if (version != null) {
+			if (count == 0) {
+				throw new StaleEntityException(o, id, current);
+			}
+			setVersion(version, o, next);
+		}
+		written(descriptor.getType(), id);
+	}
+
+	private Object getVersion(EntityProperty version, Object o) {
+		try {
+			return version.get(o);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Couldn't access version of " + o.getClass().getName(), e);
+		}
+	}
+
+	private Object nextVersion(EntityProperty version, Object current) {
+		return toIdType(version.getType(), current == null ? 0L : ((Number)current).longValue() + 1);
+	}
+
+	private void setVersion(EntityProperty version, Object o, Object value) {
+		try {
+			version.set(o, value);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Couldn't set version of " + o.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Gives a versioned object with no version yet its initial version, zero
+	 */
+	private void initVersion(Object o) {
+		EntityProperty version = EntityDescriptor.of(o.getClass()).getVersionProperty();
+		if (version != null && getVersion(version, o) == null) {
+			setVersion(version, o, toIdType(version.getType(), 0L));
+		}
+	}
+
+	/**
+	 * Reads an object with the given id, applies the change to it and updates it.  If the update fails with a 
+	 * {@link StaleEntityException} because another transaction got there first, the object is read again and 
+	 * the change reapplied, up to maxAttempts times in all.  The change must therefore be safe to repeat.
+	 * @return the updated object
+	 */
+	public <T> T updateWithRetry(Class<T> clazz, Serializable id, Consumer<? super T> change, int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Max attempts must be at least 1");
+		}
+		Object key = toIdType(getIDField(clazz).getType(), id);
+		String query = "SELECT * FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) + " = ?";
+		for (int attempt = 1; ; attempt++) {
+			//Always from the primary, as a replica may not have the winning write yet
+			T t = execute(clazz, Operation.UPDATE, () -> writeTemplate.queryForObject(query, getRowMapper(clazz), key));
+			change.accept(t);
+			try {
+				update(t);
+				return t;
+			} catch (StaleEntityException e) {
+				if (attempt >= maxAttempts) {
+					throw e;
+				}
+				logger.debug("Retrying stale update of " + clazz.getName() + " " + id);
+			}
+		}
+	}
+
+	/**
+	 * Records the current values of the object as its persisted state
+	 */
+	void snapshot(Object o) {
+		ObjectCache.get().setSnapshot(o, getSnapshotValues(o));
+	}
+
+	/**
+	 * The values of the update columns, copying the mutable types so that changes made in place are seen
+	 */
+	private Object[] getSnapshotValues(Object o) {
+		List<EntityProperty> columns = EntityDescriptor.of(o.getClass()).getUpdateColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			Object value;
+			try {
+				value = columns.get(i).get(o);
+			} catch (NoSuchMethodException e) {
+				//Can't be read, so can't be written either
+				continue;
+			}
+			values[i] = EntityProperty.copyValue(value);
+		}
+		return values;
+	}
+
+	private boolean snapshotEquals(Object v1, Object v2) {
+		if (v1 instanceof byte[] && v2 instanceof byte[]) {
+			return Arrays.equals((byte[])v1, (byte[])v2);
+		}
+		return nullSafeEquals(v1, v2);
+	}
+
+	private boolean nullSafeEquals(Object v1, Object v2) {
+		if (v1 == null && v2 == null)
+			return true;
+		if (v1 == null ^ v2 == null)
+			return false;
+		return v1.equals(v2);
+	}
+
+	public void insert(Object o) {
+		initVersion(o);
+		InsertPlan plan = getInsertPlan(o.getClass());
+		Object[] values = getInsertValues(plan, o);
+		
+		EntityProperty idField = plan.getGeneratedId();
+		if (idField != null) {
+			//Read as an object rather than through KeyHolder.getKey(), which only takes numbers, so UUID keys work
+			execute(o.getClass(), Operation.INSERT, () -> writeTemplate.execute(plan::prepare, (PreparedStatement ps) -> {
+				new ArgumentPreparedStatementSetter(values).setValues(ps);
+				int count = ps.executeUpdate();
+				try (ResultSet keys = ps.getGeneratedKeys()) {
+					if (!keys.next()) {
+						throw new IncorrectResultSizeDataAccessException("No generated key for " + o.getClass().getName(), 1, 0);
+					}
+					setGeneratedId(idField, o, keys.getObject(1));
+				}
+				return count;
+			}));
+		} else {
+			execute(o.getClass(), Operation.INSERT, () -> writeTemplate.update(con -> {
+				PreparedStatement ps = plan.prepare(con);
+				new ArgumentPreparedStatementSetter(values).setValues(ps);
+				return ps;
+			}));
+		}
+		if (EntityDescriptor.of(o.getClass()).getIdProperty() == null) {
+			//Can't be cached or looked up without an id
+			return;
+		}
+		Serializable id = getID(o);
+		ObjectCache cache = ObjectCache.get();
+		if (cache.isMissing(o.getClass(), id)) {
+			cache.remove(o.getClass(), id);
+		}
+		if (dirtyTracking) {
+			snapshot(o);
+		}
+		written(o.getClass(), id);
+	}
+
+	/**
+	 * Inserts all of the given objects using JDBC batches of up to {@link #getBatchSize()} rows per
+	 * round trip, one statement per entity class.  Generated ids are written back to each object and the 
+	 * objects are added to the {@link ObjectCache}.
+	 */
+	public void insertAll(Collection<?> objects) {
+		for (Map.Entry<Class<Object>, List<Object>> entry : groupByClass(objects).entrySet()) {
+			Class<Object> clazz = entry.getKey();
+			List<Object> group = entry.getValue();
+			InsertPlan plan = getInsertPlan(clazz);
+			EntityProperty idField = plan.getGeneratedId();
+
+			execute(clazz, Operation.INSERT, () -> writeTemplate.execute(plan::prepare, (PreparedStatement ps) -> {
+				for (int start = 0; start < group.size(); start += batchSize) {
+					List<Object> batch = group.subList(start, Math.min(start + batchSize, group.size()));
+					for (Object o : batch) {
+						initVersion(o);
+						new ArgumentPreparedStatementSetter(getInsertValues(plan, o)).setValues(ps);
+						ps.addBatch();
+					}
+					ps.executeBatch();
+					JDBCUtilsListener listener = this.listener;
+					if (listener != null) {
+						listener.batchExecuted(clazz, Operation.INSERT, batch.size());
+					}
+					if (idField != null) {
+						try (ResultSet keys = ps.getGeneratedKeys()) {
+							for (Object o : batch) {
+								if (!keys.next()) {
+									throw new IncorrectResultSizeDataAccessException("Fewer generated keys than inserted rows for " + clazz.getName(), batch.size());
+								}
+								setGeneratedId(idField, o, keys.getObject(1));
+							}
+						}
+					}
+				}
+				return group.size();
+			}));
+
+			if (EntityDescriptor.of(clazz).getIdProperty() == null) {
+				continue;
+			}
+			ObjectCache cache = ObjectCache.get();
+			for (Object o : group) {
+				Serializable id = getID(o);
+				cache.set(clazz, id, o);
+				if (dirtyTracking) {
+					snapshot(o);
+				}
+				written(clazz, id);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Class<Object>, List<Object>> groupByClass(Collection<?> objects) {
+		Map<Class<Object>, List<Object>> groups = new LinkedHashMap<>();
+		for (Object o : objects) {
+			groups.computeIfAbsent((Class<Object>)o.getClass(), c -> new ArrayList<>()).add(o);
+		}
+		return groups;
+	}
+
+	private void setGeneratedId(EntityProperty idField, Object o, Object key) {
+		try {
+			idField.set(o, toIdType(idField.getType(), key));
+		} catch (NoSuchMethodException | RuntimeException e) {
+			//Misconfigured class
+			logger.error("Misconfigured class", e);
+		}
+	}
+
+	/**
+	 * Converts a key as returned by the driver to the type of the id property - int, long, UUID or String
+	 */
+	private Object toIdType(Class<?> type, Object key) {
+		if (key == null) {
+			return null;
+		}
+		if (type.equals(int.class) || type.equals(Integer.class)) {
+			return ((Number)key).intValue();
+		} else if (type.equals(long.class) || type.equals(Long.class)) {
+			return ((Number)key).longValue();
+		} else if (type.equals(UUID.class)) {
+			return key instanceof UUID ? key : UUID.fromString(key.toString());
+		} else if (type.equals(String.class)) {
+			return key.toString();
+		}
+		return key;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * The maximum number of rows sent in one JDBC batch, or ids in one IN list, by the bulk operations
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * The number of rows the driver reads at a time for the streaming queries
+	 */
+	public void setFetchSize(int fetchSize) {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("Fetch size must be at least 1");
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	public long getMissingTimeToLive() {
+		return missingTimeToLive;
+	}
+
+	/**
+	 * How long, in milliseconds, an id found not to exist by {@link #find(Class, Serializable)} or 
+	 * {@link #getMany(Class, Collection)} is remembered as missing.  Zero turns this off.
+	 */
+	public void setMissingTimeToLive(long missingTimeToLive) {
+		if (missingTimeToLive < 0) {
+			throw new IllegalArgumentException("Time to live cannot be negative");
+		}
+		this.missingTimeToLive = missingTimeToLive;
+	}
+
+	public boolean isDirtyTracking() {
+		return dirtyTracking;
+	}
+
+	/**
+	 * When on, objects loaded by a {@link BeanRowMapper} or written by this class have a snapshot of their values 
+	 * recorded in the {@link ObjectCache}, which {@link #updateDirty(Object)} uses to write only what has changed.  
+	 * Off by default.
+	 */
+	public void setDirtyTracking(boolean dirtyTracking) {
+		this.dirtyTracking = dirtyTracking;
+	}
+
+	public SharedCache getSharedCache() {
+		return sharedCache;
+	}
+
+	/**
+	 * Sets the process wide cache consulted by {@link #get(Class, int)} and {@link #getMany(Class, Collection)} 
+	 * when an object is not in the {@link ObjectCache}.  Null (the default) disables it.
+	 */
+	public void setSharedCache(SharedCache sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	public InvalidationBus getInvalidationBus() {
+		return invalidationBus;
+	}
+
+	/**
+	 * Sets the bus on which writes are published to other nodes, so they can drop stale copies from their 
+	 * shared caches.  Null (the default) publishes nothing.
+	 */
+	public void setInvalidationBus(InvalidationBus invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	/**
+	 * Called after every write.  Records the write for read replica stickiness, removes the object from the shared 
+	 * cache and publishes the write on the invalidation bus.  Inside a transaction the object is removed again on 
+	 * completion, as another thread may have cached the old state in the meantime, and the event is not published 
+	 * until then so that other nodes don't reload the old state.
+	 */
+	private void written(Class<?> clazz, Serializable id) {
+		if (readReplicas != null) {
+			ObjectCache.get().recordWrite(clazz);
+		}
+		SharedCache shared = sharedCache;
+		InvalidationBus bus = invalidationBus;
+		if (shared != null && !shared.isEnabled(clazz)) {
+			shared = null;
+		}
+		if (shared == null && bus == null) {
+			return;
+		}
+		if (shared != null) {
+			shared.invalidate(clazz, id);
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			SharedCache local = shared;
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (local != null) {
+						local.invalidate(clazz, id);
+					}
+					if (bus != null) {
+						bus.publish(clazz, id);
+					}
+				}
+			});
+		} else if (bus != null) {
+			bus.publish(clazz, id);
+		}
+	}
+
+	public JDBCUtilsListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Sets the listener told about queries, row mapping, cache lookups and batches, such as a 
+	 * {@link MetricsRecorder}.  Null (the default) turns reporting off.
+	 */
+	public void setListener(JDBCUtilsListener listener) {
+		this.listener = listener;
+	}
+
+	public ReadReplicas getReadReplicas() {
+		return readReplicas;
+	}
+
+	/**
+	 * Sets the replicas reads are spread over.  Null (the default) sends every read to the read template.
+	 */
+	public void setReadReplicas(ReadReplicas readReplicas) {
+		this.readReplicas = readReplicas;
+	}
+
+	/**
+	 * Runs a read of the given class - on a replica if there are any, unless the class has been written in this 
+	 * scope within the stickiness window, in which case on the primary
+	 */
+	private <R> R route(Class<?> clazz, Function<JdbcTemplate, R> operation) {
+		ReadReplicas replicas = readReplicas;
+		if (replicas == null) {
+			return operation.apply(readTemplate);
+		}
+		if (replicas.isSticky(ObjectCache.get().getLastWrite(clazz))) {
+			return operation.apply(writeTemplate);
+		}
+		return replicas.read(readTemplate, operation);
+	}
+
+	/**
+	 * The template for a read that holds its connection, such as a stream, chosen as for 
+	 * {@link #route(Class, Function)} but without the failover
+	 */
+	private JdbcTemplate chooseReader(Class<?> clazz) {
+		ReadReplicas replicas = readReplicas;
+		if (replicas == null) {
+			return readTemplate;
+		}
+		if (replicas.isSticky(ObjectCache.get().getLastWrite(clazz))) {
+			return writeTemplate;
+		}
+		Replica replica = replicas.choose();
+		return replica == null ? readTemplate : replica.getTemplate();
+	}
+
+	/**
+	 * Runs a read, routed as for {@link #route(Class, Function)} and reported to the listener
+	 */
+	private <R> R read(Class<?> clazz, Operation operation, Function<JdbcTemplate, R> statement) {
+		return execute(clazz, operation, () -> route(clazz, statement));
+	}
+
+	/**
+	 * Runs a statement, reporting it to the listener if there is one
+	 */
+	private <R> R execute(Class<?> clazz, Operation operation, Supplier<R> statement) {
+		return execute(clazz, operation, statement, true);
+	}
+
+	/**
+	 * Runs a statement, reporting its start and any failure to the listener, and its success only if finished - 
+	 * otherwise the caller reports that later
+	 */
+	private <R> R execute(Class<?> clazz, Operation operation, Supplier<R> statement, boolean finished) {
+		JDBCUtilsListener listener = this.listener;
+		if (listener == null) {
+			return statement.get();
+		}
+		listener.queryStarted(clazz, operation);
+		long start = System.nanoTime();
+		R result;
+		try {
+			result = statement.get();
+		} catch (RuntimeException | Error e) {
+			listener.queryFinished(clazz, operation, System.nanoTime() - start, 0, true);
+			throw e;
+		}
+		if (!finished) {
+			return result;
+		}
+		long nanos = System.nanoTime() - start;
+		int rows;
+		if (result instanceof Collection) {
+			rows = ((Collection<?>)result).size();
+		} else if (result instanceof Integer) {
+			rows = (Integer)result;
+		} else if (result instanceof int[][]) {
+			rows = 0;
+			for (int[] batch : (int[][])result) {
+				listener.batchExecuted(clazz, operation, batch.length);
+				rows += batch.length;
+			}
+		} else {
+			rows = result == null ? 0 : 1;
+		}
+		listener.queryFinished(clazz, operation, nanos, rows, false);
+		return result;
+	}
+
+	private void cacheLookup(Class<?> clazz, Operation operation, boolean hit) {
+		JDBCUtilsListener listener = this.listener;
+		if (listener != null) {
+			if (hit) {
+				listener.cacheHit(clazz, operation);
+			} else {
+				listener.cacheMiss(clazz, operation);
+			}
+		}
+	}
+
+	public boolean isArrayParameters() {
+		return arrayParameters;
+	}
+
+	/**
+	 * Bind lists of ids as a single <code>= ANY(?)</code> array parameter rather than an IN list.  Only 
+	 * enable this for databases that support it, such as PostgreSQL.
+	 */
+	public void setArrayParameters(boolean arrayParameters) {
+		this.arrayParameters = arrayParameters;
+	}
+
+	private List<List<Object>> chunk(Collection<?> keys) {
+		List<List<Object>> chunks = new ArrayList<>();
+		List<Object> chunk = null;
+		for (Object key : keys) {
+			if (chunk == null || chunk.size() == batchSize) {
+				chunk = new ArrayList<>(Math.min(batchSize, keys.size()));
+				chunks.add(chunk);
+			}
+			chunk.add(key);
+		}
+		return chunks;
+	}
+
+	/**
+	 * Builds a condition matching the column against the given keys, adding the parameters to args.  This
+	 * is an <code>= ANY(?)</code> array if enabled and the key type maps to a SQL array type, otherwise 
+	 * an IN list.
+	 */
+	private String keyCondition(String column, Class<?> keyType, List<?> keys, List<Object> args) {
+		String arrayType = arrayParameters ? getArrayType(keyType) : null;
+		if (arrayType != null) {
+			Object[] array = keys.toArray();
+			args.add(new AbstractSqlTypeValue() {
+				@Override
+				protected Object createTypeValue(Connection con, int sqlType, String typeName) throws SQLException {
+					return con.createArrayOf(arrayType, array);
+				}
+			});
+			return column + " = ANY(?)";
+		}
+
+		StringBuilder condition = new StringBuilder(column).append(" IN (");
+		for (int i = 0; i < keys.size(); i++) {
+			condition.append(i == 0 ? "?" : ", ?");
+			args.add(keys.get(i));
+		}
+		return condition.append(")").toString();
+	}
+
+	private String getArrayType(Class<?> keyType) {
+		if (keyType.equals(int.class) || keyType.equals(Integer.class)) {
+			return "integer";
+		} else if (keyType.equals(long.class) || keyType.equals(Long.class)) {
+			return "bigint";
+		} else if (keyType.equals(UUID.class)) {
+			return "uuid";
+		} else if (keyType.equals(String.class)) {
+			return "varchar";
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the compiled insert for the given class, building it on first use
+	 */
+	private InsertPlan getInsertPlan(Class<?> clazz) {
+		InsertPlan plan = insertPlans.get(clazz);
+		if (plan == null) {
+			plan = insertPlans.computeIfAbsent(clazz, c -> new InsertPlan(getTable(c), EntityDescriptor.of(c)));
+		}
+		return plan;
+	}
+
+	private Object[] getInsertValues(InsertPlan plan, Object o) {
+		List<EntityProperty> columns = plan.getColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			EntityProperty property = columns.get(i);
+			try {
+				values[i] = getPersistenceObject(property.getField(), o, true);
+				if (logger.isDebugEnabled())
+					logger.debug("Putting " + property.getColumn() + ": " + values[i]);
+			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+				//Shouldn't ever happen - null is OK if it does
+				logger.error("Shouldn't ever happen - null is OK if it does", e);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * A cautious update will look for data on the existing object as well as the saving object.
+	 * @param forProcessing informs this method that the request should NOT be considered as a serialisation request
+	 */
+	protected Object getPersistenceObject(Field field, Object toPersist, boolean forProcessing) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
+		return getPersistenceObject(field, toPersist);
+	}
+	
+	/**
+	 * Use the getPersistenceObject(Field field, Object toPersist, boolean forProcessing) variant in preference
+	 */
+	@Deprecated
+	protected Object getPersistenceObject(Field field, Object toPersist) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
+		EntityProperty property = EntityDescriptor.of(field.getDeclaringClass()).getProperty(field);
+		Object value = property != null ? property.get(toPersist) : getGetter(field).invoke(toPersist);
+		if (value != null && field.getType().isEnum()) {
+			return value.toString();
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the row mapper used to convert DB data to the object model.  Mappers are created once per
+	 * class by {@link #createRowMapper(Class)} and shared between threads thereafter.
+	 * @param clazz the class which is to be created
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> RowMapper<T> getRowMapper(Class<T> clazz) {
+		RowMapper<T> mapper = (RowMapper<T>)rowMappers.get(clazz);
+		if (mapper == null) {
+			mapper = (RowMapper<T>)rowMappers.computeIfAbsent(clazz, this::createRowMapper);
+		}
+		return mapper;
+	}
+
+	/**
+	 * Creates a row mapper used to convert DB data to the object model.  Subclasses supplying a different
+	 * flavour of mapper override this; the result is cached, so it must be safe for concurrent use.
+	 * @param clazz the class which is to be created
+	 */
+	protected <T> RowMapper<T> createRowMapper(Class<T> clazz) {
+		return new BeanRowMapper<>(clazz, this);
+	}
+
+	/**
+	 * The row mapper for the given class as a BeanRowMapper, for queries that need its prefix support
+	 */
+	<T> BeanRowMapper<T> getBeanRowMapper(Class<T> clazz) {
+		RowMapper<T> mapper = getRowMapper(clazz);
+		if (!(mapper instanceof BeanRowMapper)) {
+			throw new IllegalStateException("The row mapper registered for " + clazz.getName() + " does not support joins");
+		}
+		return (BeanRowMapper<T>)mapper;
+	}
+
+	/**
+	 * Registers a specific row mapper for the given class, replacing any that has been created already
+	 */
+	public <T> void registerRowMapper(Class<T> clazz, RowMapper<T> mapper) {
+		rowMappers.put(clazz, mapper);
+	}
+
+	/**
+	 * Creates the row mappers for the given classes ahead of time, typically at startup, so the first 
+	 * query for each class does not pay for it
+	 */
+	public void warmRowMappers(Class<?> ... classes) {
+		for (Class<?> clazz : classes) {
+			getRowMapper(clazz);
+		}
+	}
+
+	public <T> T get(Class<T> clazz, int id) {
+		return get(clazz, id, true);
+	}
+	public <T> T get(Class<T> clazz, int id, boolean useCache) {
+		return get(clazz, id, useCache, Operation.GET);
+	}
+
+	private <T> T get(Class<T> clazz, int id, boolean useCache, Operation operation) {
+		T t = useCache ? ObjectCache.get().get(clazz, id) : null;
+		if (useCache) {
+			cacheLookup(clazz, operation, t != null);
+		}
+		if (t == null) {
+			SharedCache shared = useCache ? sharedCache : null;
+			t = shared != null ? shared.get(clazz, id) : null;
+			if (t == null) {
+				long stamp = shared != null ? shared.stamp(clazz, id) : 0;
+				t = read(clazz, operation, template -> template.queryForObject("SELECT * FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) + " = ?", getRowMapper(clazz), id));
+				if (shared != null)
+					shared.put(clazz, id, t, stamp);
+			}
+			if (useCache) 
+				ObjectCache.get().set(clazz, id, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Finds an object by id, without the exception {@link #get(Class, int)} throws when there is no such row.  A 
+	 * miss is remembered in the {@link ObjectCache} (and the shared cache, if enabled for the class) for 
+	 * {@link #getMissingTimeToLive()} milliseconds, or until an object with the id is inserted, so repeated 
+	 * probes for an id that doesn't exist don't go to the database.
+	 * @param id the id, which is converted to the type of the id property where possible
+	 */
+	public <T> Optional<T> find(Class<T> clazz, Serializable id) {
+		return find(clazz, id, true);
+	}
+
+	/**
+	 * As {@link #find(Class, Serializable)}, optionally without recording a miss - for a caller that is only 
+	 * asking one of several databases
+	 */
+	<T> Optional<T> find(Class<T> clazz, Serializable id, boolean recordMissing) {
+		Serializable key = (Serializable)toIdType(getIDField(clazz).getType(), id);
+		ObjectCache cache = ObjectCache.get();
+		T t = cache.get(clazz, key);
+		cacheLookup(clazz, Operation.FIND, t != null);
+		if (t != null) {
+			return Optional.of(t);
+		}
+		if (isKnownMissing(cache, clazz, key)) {
+			return Optional.empty();
+		}
+		SharedCache shared = sharedCache;
+		if (shared != null) {
+			t = shared.get(clazz, key);
+		}
+		if (t == null) {
+			long stamp = shared != null ? shared.stamp(clazz, key) : 0;
+			List<T> list = read(clazz, Operation.FIND, template -> template.query("SELECT * FROM " + getTable(clazz) + " WHERE " + getIDColumn(clazz) + " = ?", getRowMapper(clazz), key));
+			if (list.isEmpty()) {
+				if (recordMissing) {
+					setMissing(cache, clazz, key, stamp);
+				}
+				return Optional.empty();
+			}
+			t = list.get(0);
+			if (shared != null) {
+				shared.put(clazz, key, t, stamp);
+			}
+		}
+		cache.set(clazz, key, t);
+		return Optional.of(t);
+	}
+
+	private boolean isKnownMissing(ObjectCache cache, Class<?> clazz, Serializable id) {
+		if (cache.isMissing(clazz, id)) {
+			return true;
+		}
+		if (sharedCache != null && sharedCache.isMissing(clazz, id)) {
+			//Bring it into this scope so the next probe doesn't need the shared cache
+			if (missingTimeToLive > 0) {
+				cache.setMissing(clazz, id, missingTimeToLive, TimeUnit.MILLISECONDS);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records a miss found by a read started after the given shared cache stamp
+	 */
+	private void setMissing(ObjectCache cache, Class<?> clazz, Serializable id, long stamp) {
+		if (missingTimeToLive <= 0) {
+			return;
+		}
+		cache.setMissing(clazz, id, missingTimeToLive, TimeUnit.MILLISECONDS);
+		if (sharedCache != null) {
+			sharedCache.putMissing(clazz, id, missingTimeToLive, TimeUnit.MILLISECONDS, stamp);
+		}
+	}
+
+	/**
+	 * Fetches many objects by id.  Objects already in the {@link ObjectCache} are taken from there, and the 
+	 * rest are fetched in chunked IN (or ANY) queries and added to the cache.  Ids with no matching row 
+	 * are reported by mapping to null rather than by an exception.
+	 * @param clazz the class to fetch
+	 * @param ids the ids to fetch - these are converted to the type of the id property where possible
+	 * @return a map from id to object, in the order the ids were given
+	 */
+	public <T> Map<Serializable, T> getMany(Class<T> clazz, Collection<?> ids) {
+		Class<?> idType = getIDField(clazz).getType();
+		Map<Serializable, T> results = new LinkedHashMap<>();
+		List<Object> missing = new ArrayList<>();
+		
+		ObjectCache cache = ObjectCache.get();
+		for (Object requested : ids) {
+			Serializable id = (Serializable)toIdType(idType, requested);
+			if (results.containsKey(id)) {
+				continue;
+			}
+			T t = cache.get(clazz, id);
+			cacheLookup(clazz, Operation.GET_MANY, t != null);
+			if (t == null && sharedCache != null) {
+				t = sharedCache.get(clazz, id);
+				if (t != null) {
+					cache.set(clazz, id, t);
+				}
+			}
+			results.put(id, t);
+			if (t == null && !isKnownMissing(cache, clazz, id)) {
+				missing.add(id);
+			}
+		}
+
+		SharedCache shared = sharedCache;
+		Map<Object, Long> stamps = new HashMap<>();
+		if (shared != null) {
+			for (Object id : missing) {
+				stamps.put(id, shared.stamp(clazz, (Serializable)id));
+			}
+		}
+		String idColumn = getIDColumn(clazz);
+		for (List<Object> chunk : chunk(missing)) {
+			List<Object> args = new ArrayList<>(chunk.size());
+			String query = "SELECT * FROM " + getTable(clazz) + " WHERE " + keyCondition(idColumn, idType, chunk, args);
+			for (T t : read(clazz, Operation.GET_MANY, template -> template.query(query, getRowMapper(clazz), args.toArray()))) {
+				Serializable id = getID(t);
+				results.put(id, t);
+				cache.set(clazz, id, t);
+				Long stamp = stamps.get(id);
+				if (stamp != null) {
+					shared.put(clazz, id, t, stamp);
+				}
+			}
+		}
+		for (Object id : missing) {
+			if (results.get(id) == null) {
+				setMissing(cache, clazz, (Serializable)id, shared != null ? stamps.get(id) : 0);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Creates a query that will find all of the objects represented by targetClass where
+	 * foreign keys exist to the given constraint objects.  Results are only guaranteed
+	 * if the target class has exactly ONE foreign key to each given object.
+	 * 
+	 * @param clazz
+	 * @param constraints
+	 * @return
+	 */
+	public <T> List<T> queryFor(Class<T> targetClass, Object ... constraints) {
+		return query(targetClass).constrainedBy(constraints).list();
+	}
+
+	/**
+	 * Starts a query for objects of the given class.  See {@link EntityQuery} for the options - this is the 
+	 * way to load many-to-one targets in the same statement rather than one query per row.
+	 */
+	public <T> EntityQuery<T> query(Class<T> clazz) {
+		return new EntityQuery<>(this, clazz);
+	}
+
+	/**
+	 * Runs a select built by an {@link EntityQuery} for the given class
+	 */
+	<R> List<R> select(Class<?> clazz, String query, RowMapper<R> mapper, Object[] args) {
+		return read(clazz, Operation.QUERY, template -> template.query(query, mapper, args));
+	}
+
+	/**
+	 * Runs a select built by an {@link EntityQuery} for the given class over a cursor
+	 */
+	<R> Stream<R> selectStream(Class<?> clazz, String query, RowMapper<R> mapper, Object[] args, int fetchSize) {
+		JDBCUtilsListener listener = this.listener;
+		if (listener == null) {
+			return new ResultSetIterator<>(chooseReader(clazz), query, args, mapper, fetchSize).stream();
+		}
+		//Reported when the cursor is released rather than when the stream is returned, so the time and rows cover the reading
+		long start = System.nanoTime();
+		ResultSetIterator<R> iterator = execute(clazz, Operation.QUERY, 
+				() -> new ResultSetIterator<>(chooseReader(clazz), query, args, mapper, fetchSize), false);
+		iterator.onCompletion((rows, failed) -> listener.queryFinished(clazz, Operation.QUERY, System.nanoTime() - start, rows, failed));
+		return iterator.stream();
+	}
+	
+	public void removeManyToMany(Object o1, Object o2) {
+		Class<?> sourceClass = o1.getClass();
+		Class<?> targetClass = o2.getClass();
+		
+		ManyToManyMapping mapping = getManyToManyMapping(sourceClass, targetClass);
+
+		String query = "DELETE FROM " + mapping.getTable() + " WHERE " + mapping.getTargetKey() + " = ? AND " + mapping.getSourceKey() + " = ?";
+
+		execute(targetClass, Operation.DELETE, () -> writeTemplate.update(query, getID(o2), getID(o1)));
+		linksWritten(sourceClass, targetClass);
+	}
+	
+	public void addManyToMany(Object o1, Object o2) {
+		Class<?> sourceClass = o1.getClass();
+		Class<?> targetClass = o2.getClass();
+		
+		ManyToManyMapping mapping = getManyToManyMapping(sourceClass, targetClass);
+
+		String query = "INSERT INTO " + mapping.getTable() + "(" + mapping.getSourceKey() + ", " + mapping.getTargetKey() + ") VALUES (?, ?)";
+
+		execute(targetClass, Operation.INSERT, () -> writeTemplate.update(query, getID(o1), getID(o2)));
+		linksWritten(sourceClass, targetClass);
+	}
+
+	/**
+	 * Makes the many-to-many links from the source to objects of the target class exactly the given set.  The
+	 * existing links are read in one query and only the differences are written, as batched inserts and 
+	 * chunked deletes, so an unchanged link is never touched.
+	 * @param source the originating object
+	 * @param targetClass the class of the remote objects
+	 * @param desired the objects the source should be linked to
+	 * @return the number of links added plus the number removed
+	 */
+	public int syncManyToMany(Object source, Class<?> targetClass, Collection<?> desired) {
+		ManyToManyMapping mapping = getManyToManyMapping(source.getClass(), targetClass);
+		Class<?> idType = getIDField(targetClass).getType();
+		Serializable sourceId = getID(source);
+
+		Set<Object> current = new HashSet<>();
+		String select = "SELECT " + mapping.getTargetKey() + " FROM " + mapping.getTable() + " WHERE " + mapping.getSourceKey() + " = ?";
+		//From the primary, as the differences are written there
+		for (Object id : execute(targetClass, Operation.GET_MANY_TO_MANY, () -> writeTemplate.queryForList(select, Object.class, sourceId))) {
+			current.add(toIdType(idType, id));
+		}
+
+		Set<Object> wanted = new LinkedHashSet<>();
+		for (Object target : desired) {
+			wanted.add(getID(target));
+		}
+
+		List<Object> toAdd = new ArrayList<>();
+		for (Object id : wanted) {
+			if (!current.remove(id)) {
+				toAdd.add(id);
+			}
+		}
+		//Whatever is left in current is no longer wanted
+
+		if (!toAdd.isEmpty()) {
+			String query = "INSERT INTO " + mapping.getTable() + "(" + mapping.getSourceKey() + ", " + mapping.getTargetKey() + ") VALUES (?, ?)";
+			execute(targetClass, Operation.INSERT, () -> writeTemplate.batchUpdate(query, toAdd, batchSize, 
+					(ps, id) -> new ArgumentPreparedStatementSetter(new Object[] { sourceId, id }).setValues(ps)));
+		}
+		for (List<Object> chunk : chunk(current)) {
+			List<Object> args = new ArrayList<>(chunk.size() + 1);
+			args.add(sourceId);
+			String query = "DELETE FROM " + mapping.getTable() + " WHERE " + mapping.getSourceKey() + " = ? AND " 
+					+ keyCondition(mapping.getTargetKey(), idType, chunk, args);
+			execute(targetClass, Operation.DELETE, () -> writeTemplate.update(query, args.toArray()));
+		}
+		if (!toAdd.isEmpty() || !current.isEmpty()) {
+			linksWritten(source.getClass(), targetClass);
+		}
+		return toAdd.size() + current.size();
+	}
+
+	/**
+	 * Records a change to a many-to-many mapping table for read replica stickiness, against both classes as the 
+	 * links are read from either side
+	 */
+	private void linksWritten(Class<?> sourceClass, Class<?> targetClass) {
+		if (readReplicas != null) {
+			ObjectCache cache = ObjectCache.get();
+			cache.recordWrite(sourceClass);
+			cache.recordWrite(targetClass);
+		}
+	}
+
+	public <T> List<T> getAll(Class<T> clazz) {
+		List<T> list = read(clazz, Operation.GET_ALL, template -> template.query("SELECT * FROM " + getTable(clazz), getRowMapper(clazz)));
+		for (T t : list) 
+			ObjectCache.get().set(clazz, getID(t), t);
+
+		return list;
+	}
+	
+	/**
+	 * Streaming form of {@link #getAll(Class)}, reading the table over a cursor rather than into a list.  The 
+	 * stream must be closed (or read to the end) to release its connection.
+	 */
+	public <T> Stream<T> stream(Class<T> clazz) {
+		return stream(clazz, true);
+	}
+
+	/**
+	 * Streaming form of {@link #getAll(Class)}.  Pass useCache false for tables larger than the heap, 
+	 * otherwise every row is kept in the {@link ObjectCache}.
+	 */
+	public <T> Stream<T> stream(Class<T> clazz, boolean useCache) {
+		return query(clazz).cache(useCache).stream();
+	}
+
+	/**
+	 * Streaming form of {@link #queryFor(Class, Object...)}
+	 */
+	public <T> Stream<T> streamFor(Class<T> targetClass, Object ... constraints) {
+		return query(targetClass).constrainedBy(constraints).stream();
+	}
+
+	/**
+	 * Streaming form of {@link #getOneToMany(Object, Class)}
+	 */
+	public <T> Stream<T> streamOneToMany(Object source, Class<T> targetClass) {
+		if (EntityDescriptor.of(targetClass).getManyToOne(source.getClass()) == null) {
+			throw new IllegalArgumentException(source.getClass() + " does not define a one to many relationship for " + targetClass.getName());
+		}
+		return query(targetClass).constrainedBy(source).stream();
+	}
+
+	/**
+	 * Streaming form of {@link #getOneToMany(Object, Class, String)}
+	 */
+	public <T> Stream<T> streamOneToMany(Object source, Class<T> targetClass, String mappedBy) {
+		return query(targetClass).constrainedBy(mappedBy, source).stream();
+	}
+
+	/**
+	 * Pages through the objects of the given class in id order, optionally constrained as for 
+	 * {@link #queryFor(Class, Object...)}.  Each page is one keyset query, so deep pages are as fast as 
+	 * the first - see {@link Paginator}.
+	 */
+	public <T> Paginator<T> paginate(Class<T> clazz, int pageSize, Object ... constraints) {
+		return query(clazz).constrainedBy(constraints).paginate(pageSize);
+	}
+
+	public void close() {
+		ObjectCache.terminate();
+	}
+}
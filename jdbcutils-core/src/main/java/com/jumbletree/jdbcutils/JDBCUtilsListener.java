@@ -0,0 +1,51 @@
+package com.jumbletree.jdbcutils;
+
+/**
+ * Receives events from {@link JDBCUtils} for metrics or tracing - set one with
+ * {@link JDBCUtils#setListener(JDBCUtilsListener)}.  {@link MetricsRecorder} is a ready made implementation.
+ *
+ * Events are delivered synchronously on the thread doing the work, often once per row, so implementations
+ * must be cheap and thread safe, and should not throw.  Every method does nothing by default.
+ */
+public interface JDBCUtilsListener {
+
+	/**
+	 * A statement is about to run
+	 */
+	default void queryStarted(Class<?> entity, Operation operation) {
+	}
+
+	/**
+	 * A statement has finished, including the time taken to map its rows
+	 * @param nanos the elapsed time
+	 * @param rows the rows read or written, where known
+	 * @param failed true if it threw
+	 */
+	default void queryFinished(Class<?> entity, Operation operation, long nanos, int rows, boolean failed) {
+	}
+
+	/**
+	 * A row has been mapped to an object by a {@link BeanRowMapper}
+	 * @param nanos the time spent mapping it
+	 */
+	default void rowMapped(Class<?> entity, long nanos) {
+	}
+
+	/**
+	 * An object was found in the {@link ObjectCache}
+	 */
+	default void cacheHit(Class<?> entity, Operation operation) {
+	}
+
+	/**
+	 * An object was looked for in the {@link ObjectCache} and not found
+	 */
+	default void cacheMiss(Class<?> entity, Operation operation) {
+	}
+
+	/**
+	 * A JDBC batch of the given number of rows has been sent
+	 */
+	default void batchExecuted(Class<?> entity, Operation operation, int size) {
+	}
+}
@@ -0,0 +1,56 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * An in-JVM transport, for tests and for several JDBCUtils in one process that each have their own shared
+ * cache.  Each transport created with {@link #join()} is another node on the same channel, and batches are
+ * delivered to the other nodes on the sending thread.
+ */
+public class LocalInvalidationTransport implements InvalidationTransport {
+
+	private final List<LocalInvalidationTransport> channel;
+	private volatile Consumer<List<InvalidationEvent>> receiver;
+
+	/**
+	 * Creates the first node on a new channel
+	 */
+	public LocalInvalidationTransport() {
+		this(new CopyOnWriteArrayList<>());
+	}
+
+	private LocalInvalidationTransport(List<LocalInvalidationTransport> channel) {
+		this.channel = channel;
+		channel.add(this);
+	}
+
+	/**
+	 * Creates another node on this transport's channel
+	 */
+	public LocalInvalidationTransport join() {
+		return new LocalInvalidationTransport(channel);
+	}
+
+	@Override
+	public void start(Consumer<List<InvalidationEvent>> receiver) {
+		this.receiver = receiver;
+	}
+
+	@Override
+	public void send(List<InvalidationEvent> events) {
+		for (LocalInvalidationTransport node : channel) {
+			Consumer<List<InvalidationEvent>> receiver = node.receiver;
+			if (node != this && receiver != null) {
+				receiver.accept(events);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		channel.remove(this);
+		receiver = null;
+	}
+}
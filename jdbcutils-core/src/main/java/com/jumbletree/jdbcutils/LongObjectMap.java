@@ -0,0 +1,138 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * An open addressing hash map from primitive long keys to objects, so numeric ids are held without boxing
+ * and without an entry object each.  Linear probing with backward shift deletion keeps the tables free of
+ * tombstones.  Not thread safe.
+ */
+final class LongObjectMap {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+
+	LongObjectMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+		mask = MIN_CAPACITY - 1;
+	}
+
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+
+	Object get(long key) {
+		int i = hash(key) & mask;
+		Object value;
+		while ((value = values[i]) != null) {
+			if (keys[i] == key) {
+				return value;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the value for the key, returning the previous value or null.  The value must not be null.
+	 */
+	Object put(long key, Object value) {
+		int i = hash(key) & mask;
+		Object existing;
+		while ((existing = values[i]) != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return existing;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		//Keep the load factor at or below 0.5 so probes stay short
+		if (++size > (mask + 1) >> 1) {
+			resize((mask + 1) << 1, null);
+		}
+		return null;
+	}
+
+	Object remove(long key) {
+		int i = hash(key) & mask;
+		Object value;
+		while ((value = values[i]) != null) {
+			if (keys[i] == key) {
+				delete(i);
+				return value;
+			}
+			i = (i + 1) & mask;
+		}
+		return null;
+	}
+
+	private void delete(int slot) {
+		size--;
+		//Shift back any following entries that would no longer be found
+		int gap = slot;
+		int i = (slot + 1) & mask;
+		while (values[i] != null) {
+			int home = hash(keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		values[gap] = null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Drops the entries whose values match, shrinking the tables if they are now mostly empty
+	 */
+	void removeIf(Predicate<Object> dead) {
+		int capacity = mask + 1;
+		while (capacity > MIN_CAPACITY && size < capacity >> 3) {
+			capacity >>= 1;
+		}
+		resize(capacity, dead);
+	}
+
+	private void resize(int capacity, Predicate<Object> dead) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		size = 0;
+		for (int i = 0; i < oldValues.length; i++) {
+			Object value = oldValues[i];
+			if (value == null || (dead != null && dead.test(value))) {
+				continue;
+			}
+			int j = hash(oldKeys[i]) & mask;
+			while (values[j] != null) {
+				j = (j + 1) & mask;
+			}
+			keys[j] = oldKeys[i];
+			values[j] = value;
+			size++;
+		}
+	}
+
+	void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+}
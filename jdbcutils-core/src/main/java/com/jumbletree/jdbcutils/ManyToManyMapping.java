@@ -0,0 +1,42 @@
+package com.jumbletree.jdbcutils;
+
+import com.jumbletree.jdbcutils.EntityDescriptor.ManyToManyRelation;
+
+/**
+ * The mapping table for a many-to-many relationship, parsed from the <code>mappedBy</code> of the 
+ * relationship on each side.  The source side names the mapping table and the column holding the target's 
+ * key, and the target side names the column holding the source's key.
+ */
+final class ManyToManyMapping {
+
+	private final String table;
+	private final String sourceKey;
+	private final String targetKey;
+
+	ManyToManyMapping(ManyToManyRelation sourceM2m, ManyToManyRelation targetM2m) {
+		String sourceMapped = sourceM2m.getMappedBy();
+		this.table = sourceMapped.substring(0, sourceMapped.indexOf("."));
+		this.targetKey = sourceMapped.substring(sourceMapped.indexOf(".") + 1);
+
+		String sourceKey = targetM2m.getMappedBy();
+		this.sourceKey = sourceKey.substring(sourceKey.indexOf(".") + 1);
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	/**
+	 * The mapping table column holding the source's id
+	 */
+	String getSourceKey() {
+		return sourceKey;
+	}
+
+	/**
+	 * The mapping table column holding the target's id
+	 */
+	String getTargetKey() {
+		return targetKey;
+	}
+}
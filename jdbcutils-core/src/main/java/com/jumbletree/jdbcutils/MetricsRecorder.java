@@ -0,0 +1,167 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link JDBCUtilsListener} that counts queries, rows, cache hits and misses and batches per entity class and
+ * {@link Operation}, and keeps latency histograms for statements and row mapping:
+ *
+ * <pre>
+ * MetricsRecorder metrics = new MetricsRecorder();
+ * utils.setListener(metrics);
+ * ...
+ * logger.info(metrics.snapshot().toString());
+ * </pre>
+ *
+ * Counters are {@link LongAdder}s, so threads recording at once don't contend, and histograms have fixed
+ * power-of-two buckets, so once a class and operation have been seen recording allocates nothing.
+ */
+public class MetricsRecorder implements JDBCUtilsListener {
+
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	/**
+	 * Latencies in buckets with upper bounds of 1&micro;s (2<sup>10</sup>ns) doubling up to about 8.6s, with a
+	 * final bucket for anything longer
+	 */
+	static final class Histogram {
+		static final int BUCKETS = 25;
+		private static final int FIRST_SHIFT = 10;
+
+		private final LongAdder[] counts = new LongAdder[BUCKETS];
+		private final LongAdder total = new LongAdder();
+
+		Histogram() {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos) {
+			int bucket = Math.max(0, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)) - FIRST_SHIFT);
+			counts[Math.min(bucket, BUCKETS - 1)].increment();
+			total.add(nanos);
+		}
+
+		/**
+		 * The upper bound of the bucket in nanoseconds, or {@link Long#MAX_VALUE} for the last
+		 */
+		static long upperBound(int bucket) {
+			return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (FIRST_SHIFT + bucket);
+		}
+
+		MetricsSnapshot.Latency snapshot() {
+			long[] values = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				values[i] = counts[i].sum();
+			}
+			return new MetricsSnapshot.Latency(values, total.sum());
+		}
+	}
+
+	private static final class OperationStats {
+		final LongAdder queries = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder rows = new LongAdder();
+		final LongAdder cacheHits = new LongAdder();
+		final LongAdder cacheMisses = new LongAdder();
+		final LongAdder batches = new LongAdder();
+		final LongAdder batchRows = new LongAdder();
+		final Histogram time = new Histogram();
+	}
+
+	private static final class EntityStats {
+		final AtomicReferenceArray<OperationStats> operations = new AtomicReferenceArray<>(OPERATIONS.length);
+		final LongAdder rowsMapped = new LongAdder();
+		final Histogram mapTime = new Histogram();
+
+		OperationStats get(Operation operation) {
+			OperationStats stats = operations.get(operation.ordinal());
+			if (stats == null) {
+				operations.compareAndSet(operation.ordinal(), null, new OperationStats());
+				stats = operations.get(operation.ordinal());
+			}
+			return stats;
+		}
+	}
+
+	private final ConcurrentHashMap<Class<?>, EntityStats> entities = new ConcurrentHashMap<>();
+
+	private EntityStats get(Class<?> entity) {
+		EntityStats stats = entities.get(entity);
+		if (stats == null) {
+			stats = entities.computeIfAbsent(entity, e -> new EntityStats());
+		}
+		return stats;
+	}
+
+	@Override
+	public void queryFinished(Class<?> entity, Operation operation, long nanos, int rows, boolean failed) {
+		OperationStats stats = get(entity).get(operation);
+		stats.queries.increment();
+		if (failed) {
+			stats.failures.increment();
+		}
+		stats.rows.add(rows);
+		stats.time.record(nanos);
+	}
+
+	@Override
+	public void rowMapped(Class<?> entity, long nanos) {
+		EntityStats stats = get(entity);
+		stats.rowsMapped.increment();
+		stats.mapTime.record(nanos);
+	}
+
+	@Override
+	public void cacheHit(Class<?> entity, Operation operation) {
+		get(entity).get(operation).cacheHits.increment();
+	}
+
+	@Override
+	public void cacheMiss(Class<?> entity, Operation operation) {
+		get(entity).get(operation).cacheMisses.increment();
+	}
+
+	@Override
+	public void batchExecuted(Class<?> entity, Operation operation, int size) {
+		OperationStats stats = get(entity).get(operation);
+		stats.batches.increment();
+		stats.batchRows.add(size);
+	}
+
+	/**
+	 * Copies the current figures.  Counts recorded while the copy is being taken may or may not be included.
+	 */
+	public MetricsSnapshot snapshot() {
+		List<MetricsSnapshot.OperationMetrics> operations = new ArrayList<>();
+		List<MetricsSnapshot.MappingMetrics> mappings = new ArrayList<>();
+		for (Map.Entry<Class<?>, EntityStats> entry : entities.entrySet()) {
+			Class<?> entity = entry.getKey();
+			EntityStats stats = entry.getValue();
+			for (Operation operation : OPERATIONS) {
+				OperationStats op = stats.operations.get(operation.ordinal());
+				if (op != null) {
+					operations.add(new MetricsSnapshot.OperationMetrics(entity, operation, op.queries.sum(), op.failures.sum(),
+							op.rows.sum(), op.cacheHits.sum(), op.cacheMisses.sum(), op.batches.sum(), op.batchRows.sum(), op.time.snapshot()));
+				}
+			}
+			if (stats.rowsMapped.sum() > 0) {
+				mappings.add(new MetricsSnapshot.MappingMetrics(entity, stats.rowsMapped.sum(), stats.mapTime.snapshot()));
+			}
+		}
+		return new MetricsSnapshot(operations, mappings);
+	}
+
+	/**
+	 * Discards everything recorded so far
+	 */
+	public void reset() {
+		entities.clear();
+	}
+}
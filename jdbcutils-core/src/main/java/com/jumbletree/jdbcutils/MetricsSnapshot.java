@@ -0,0 +1,267 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The figures from a {@link MetricsRecorder} at one point in time, for export to a metrics system or a log.
+ * Operations are listed busiest first.
+ */
+public final class MetricsSnapshot {
+
+	/**
+	 * A latency distribution, in the buckets described by {@link MetricsRecorder}
+	 */
+	public static final class Latency {
+		private final long[] counts;
+		private final long totalNanos;
+
+		Latency(long[] counts, long totalNanos) {
+			this.counts = counts;
+			this.totalNanos = totalNanos;
+		}
+
+		public int getBucketCount() {
+			return counts.length;
+		}
+
+		/**
+		 * The number of samples in the given bucket
+		 */
+		public long getCount(int bucket) {
+			return counts[bucket];
+		}
+
+		/**
+		 * The exclusive upper bound of the given bucket in nanoseconds, or {@link Long#MAX_VALUE} for the last
+		 */
+		public long getUpperBound(int bucket) {
+			return MetricsRecorder.Histogram.upperBound(bucket);
+		}
+
+		public long getCount() {
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public double getMeanNanos() {
+			long count = getCount();
+			return count == 0 ? 0 : (double)totalNanos / count;
+		}
+
+		/**
+		 * The upper bound of the bucket holding the given percentile (0 to 100), so accurate to within a
+		 * factor of two, or zero if there are no samples
+		 */
+		public long getPercentileNanos(double percentile) {
+			long count = getCount();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long)Math.ceil(count * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					return getUpperBound(i);
+				}
+			}
+			return getUpperBound(counts.length - 1);
+		}
+	}
+
+	/**
+	 * The figures for one entity class and operation
+	 */
+	public static final class OperationMetrics {
+		private final Class<?> entity;
+		private final Operation operation;
+		private final long queries;
+		private final long failures;
+		private final long rows;
+		private final long cacheHits;
+		private final long cacheMisses;
+		private final long batches;
+		private final long batchRows;
+		private final Latency time;
+
+		OperationMetrics(Class<?> entity, Operation operation, long queries, long failures, long rows, long cacheHits, long cacheMisses,
+				long batches, long batchRows, Latency time) {
+			this.entity = entity;
+			this.operation = operation;
+			this.queries = queries;
+			this.failures = failures;
+			this.rows = rows;
+			this.cacheHits = cacheHits;
+			this.cacheMisses = cacheMisses;
+			this.batches = batches;
+			this.batchRows = batchRows;
+			this.time = time;
+		}
+
+		public Class<?> getEntity() {
+			return entity;
+		}
+
+		public Operation getOperation() {
+			return operation;
+		}
+
+		/**
+		 * The number of statements run, including those that failed
+		 */
+		public long getQueries() {
+			return queries;
+		}
+
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * The rows read or written
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		public long getCacheHits() {
+			return cacheHits;
+		}
+
+		public long getCacheMisses() {
+			return cacheMisses;
+		}
+
+		/**
+		 * The proportion of {@link ObjectCache} lookups that were hits, or zero if there were none
+		 */
+		public double getCacheHitRatio() {
+			long lookups = cacheHits + cacheMisses;
+			return lookups == 0 ? 0 : (double)cacheHits / lookups;
+		}
+
+		public long getBatches() {
+			return batches;
+		}
+
+		public double getMeanBatchSize() {
+			return batches == 0 ? 0 : (double)batchRows / batches;
+		}
+
+		/**
+		 * The statement times, including mapping the rows
+		 */
+		public Latency getTime() {
+			return time;
+		}
+	}
+
+	/**
+	 * The row mapping figures for one entity class
+	 */
+	public static final class MappingMetrics {
+		private final Class<?> entity;
+		private final long rows;
+		private final Latency time;
+
+		MappingMetrics(Class<?> entity, long rows, Latency time) {
+			this.entity = entity;
+			this.rows = rows;
+			this.time = time;
+		}
+
+		public Class<?> getEntity() {
+			return entity;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * The time taken to map each row
+		 */
+		public Latency getTime() {
+			return time;
+		}
+	}
+
+	private final List<OperationMetrics> operations;
+	private final List<MappingMetrics> mappings;
+
+	MetricsSnapshot(List<OperationMetrics> operations, List<MappingMetrics> mappings) {
+		operations.sort(Comparator.comparingLong((OperationMetrics o) -> o.time.getTotalNanos()).reversed());
+		mappings.sort(Comparator.comparingLong((MappingMetrics m) -> m.time.getTotalNanos()).reversed());
+		this.operations = Collections.unmodifiableList(operations);
+		this.mappings = Collections.unmodifiableList(mappings);
+	}
+
+	public List<OperationMetrics> getOperations() {
+		return operations;
+	}
+
+	public List<MappingMetrics> getMappings() {
+		return mappings;
+	}
+
+	/**
+	 * The figures for the given class and operation, or null if nothing was recorded for them
+	 */
+	public OperationMetrics getOperation(Class<?> entity, Operation operation) {
+		for (OperationMetrics metrics : operations) {
+			if (metrics.entity == entity && metrics.operation == operation) {
+				return metrics;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The {@link ObjectCache} hit ratio over all classes and operations, or zero if there were no lookups
+	 */
+	public double getCacheHitRatio() {
+		long hits = 0;
+		long lookups = 0;
+		for (OperationMetrics metrics : operations) {
+			hits += metrics.cacheHits;
+			lookups += metrics.cacheHits + metrics.cacheMisses;
+		}
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+
+	/**
+	 * One line per operation and per mapped class, with times in microseconds
+	 */
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		for (OperationMetrics o : operations) {
+			out.append(o.entity.getSimpleName()).append(' ').append(o.operation)
+				.append(": queries=").append(o.queries)
+				.append(" failures=").append(o.failures)
+				.append(" rows=").append(o.rows)
+				.append(" hits=").append(o.cacheHits)
+				.append(" misses=").append(o.cacheMisses)
+				.append(" batches=").append(o.batches)
+				.append(" mean=").append(Math.round(o.time.getMeanNanos() / 1000))
+				.append(" p99<").append(o.time.getPercentileNanos(99) / 1000)
+				.append('\n');
+		}
+		for (MappingMetrics m : mappings) {
+			out.append(m.entity.getSimpleName()).append(" mapRow: rows=").append(m.rows)
+				.append(" mean=").append(Math.round(m.time.getMeanNanos() / 1000))
+				.append(" p99<").append(m.time.getPercentileNanos(99) / 1000)
+				.append('\n');
+		}
+		return out.toString();
+	}
+}
@@ -1,46 +1,497 @@
 package com.jumbletree.jdbcutils;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-public class ObjectCache extends HashMap<Class<?>, HashMap<Serializable, Object>> {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-	private static final long serialVersionUID = 1L;
+/**
+ * The per-thread identity map - at most one instance of each entity per id within a scope, normally a request
+ * (see {@link ObjectCacheFilter}).  Integer and long ids are held in primitive keyed tables, other ids in a map.
+ *
+ * A scope can be limited to a number of entries, after which further objects are simply not cached, and can
+ * hold its objects through soft or weak references so that the garbage collector can reclaim them; either stops
+ * a large getAll or batch job from exhausting the heap.  The defaults for new scopes are set with
+ * {@link #setDefaultMaxEntries(int)} and {@link #setDefaultReferenceMode(ReferenceMode)}.
+ *
+ * An id can also be recorded as missing for a while (see {@link JDBCUtils#find(Class, Serializable)}), which 
+ * {@link #get(Class, Serializable)} reports as null.
+ *
+ * When {@link JDBCUtils#setDirtyTracking(boolean) dirty tracking} is on, the scope also keeps a snapshot of each 
+ * loaded object's persisted values.  Snapshots are held against the object's identity, weakly, so they go when 
+ * the object does even if it was never cached.
+ */
+public class ObjectCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ObjectCache.class);
+
+	public enum ReferenceMode {
+		STRONG, SOFT, WEAK
+	}
+
+	/**
+	 * The marker for an id known not to exist, until the expiry time
+	 */
+	private static final class Missing {
+		private final long expires;
+
+		Missing(long expires) {
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * The objects of one class
+	 */
+	private static final class Entries {
+		private final LongObjectMap numeric = new LongObjectMap();
+		private Map<Serializable, Object> other;
+
+		int size() {
+			return numeric.size() + (other == null ? 0 : other.size());
+		}
+	}
+
+	/**
+	 * A weak key compared by identity, so entities with their own equals() don't share a snapshot
+	 */
+	private static final class IdentityKey extends WeakReference<Object> {
+		private final int hash;
+
+		IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof IdentityKey)) {
+				return false;
+			}
+			Object referent = get();
+			return referent != null && referent == ((IdentityKey)obj).get();
+		}
+	}
 
 	private static ThreadLocal<ObjectCache> caches = new ThreadLocal<>();
 
+	private static volatile int defaultMaxEntries = Integer.MAX_VALUE;
+	private static volatile ReferenceMode defaultReferenceMode = ReferenceMode.STRONG;
+
+	private final HashMap<Class<?>, Entries> entries = new HashMap<>();
+	private final int maxEntries;
+	private final ReferenceMode referenceMode;
+	private int size;
+	private boolean full;
+	private HashMap<IdentityKey, Object[]> snapshots;
+	private HashMap<Class<?>, Long> writes;
+	private ReferenceQueue<Object> collected;
+
+	public ObjectCache() {
+		this(defaultMaxEntries, defaultReferenceMode);
+	}
+
+	public ObjectCache(int maxEntries, ReferenceMode referenceMode) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("Max entries cannot be negative");
+		}
+		this.maxEntries = maxEntries;
+		this.referenceMode = referenceMode;
+	}
+
 	public static void create() {
 		caches.set(new ObjectCache());
 	}
 
+	/**
+	 * Starts a scope with its own limits, for example for a batch thread that reads far more than a request
+	 */
+	public static void create(int maxEntries, ReferenceMode referenceMode) {
+		caches.set(new ObjectCache(maxEntries, referenceMode));
+	}
+
 	public static void terminate() {
 		caches.remove();
 	}
-	
+
+	/**
+	 * Makes the given cache the current thread's, returning the one it replaces (or null).  This is how a scope 
+	 * is carried into other threads - see {@link AsyncJDBCUtils} - and passing the returned value back in 
+	 * restores the thread's own.  The cache's methods are synchronized so it can be shared this way.
+	 */
+	public static ObjectCache bind(ObjectCache cache) {
+		ObjectCache previous = caches.get();
+		if (cache == null) {
+			caches.remove();
+		} else {
+			caches.set(cache);
+		}
+		return previous;
+	}
+
 	public static ObjectCache get() {
 		if (caches.get() == null) {
 			create();
 		}
 		return caches.get();
 	}
-	
-	@SuppressWarnings("unchecked")
-	public <T> T get(Class<T> clazz, Serializable id) {
-		HashMap<Serializable, Object> map = get(clazz);
-		
-		if (map != null) {
-			return (T)map.get(id);
-		}
-		
-		return null;
-	}
-	
-	public <T> void set(Class<T> clazz, Serializable id, T obj) {
-		HashMap<Serializable, Object> map = get(clazz);
+
+	public static int getDefaultMaxEntries() {
+		return defaultMaxEntries;
+	}
+
+	/**
+	 * The maximum number of objects held by each new scope.  Unlimited by default.
+	 */
+	public static void setDefaultMaxEntries(int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("Max entries cannot be negative");
+		}
+		defaultMaxEntries = maxEntries;
+	}
+
+	public static ReferenceMode getDefaultReferenceMode() {
+		return defaultReferenceMode;
+	}
+
+	/**
+	 * How each new scope holds its objects.  Strong by default.
+	 */
+	public static void setDefaultReferenceMode(ReferenceMode referenceMode) {
+		defaultReferenceMode = referenceMode;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public ReferenceMode getReferenceMode() {
+		return referenceMode;
+	}
+
+	/**
+	 * The number of objects held, which in soft or weak mode can include some that have been collected
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		snapshots = null;
+		size = 0;
+		full = false;
+	}
+
+	private static boolean isNumeric(Serializable id) {
+		return id instanceof Integer || id instanceof Long || id instanceof Short || id instanceof Byte;
+	}
+
+	public synchronized <T> T get(Class<T> clazz, int id) {
+		return get(clazz, (long)id);
+	}
+
+	public synchronized <T> T get(Class<T> clazz, long id) {
+		Entries map = entries.get(clazz);
+		if (map == null) {
+			return null;
+		}
+		Object value = map.numeric.get(id);
+		if (value == null || value instanceof Missing) {
+			return null;
+		}
+		T t = unwrap(clazz, value);
+		if (t == null) {
+			//Collected
+			map.numeric.remove(id);
+			size--;
+		}
+		return t;
+	}
+
+	public synchronized <T> T get(Class<T> clazz, Serializable id) {
+		if (id == null) {
+			return null;
+		}
+		if (isNumeric(id)) {
+			return get(clazz, ((Number)id).longValue());
+		}
+		Entries map = entries.get(clazz);
+		if (map == null || map.other == null) {
+			return null;
+		}
+		Object value = map.other.get(id);
+		if (value == null || value instanceof Missing) {
+			return null;
+		}
+		T t = unwrap(clazz, value);
+		if (t == null) {
+			map.other.remove(id);
+			size--;
+		}
+		return t;
+	}
+
+	public synchronized <T> void set(Class<T> clazz, int id, T obj) {
+		set(clazz, (long)id, obj);
+	}
+
+	public synchronized <T> void set(Class<T> clazz, long id, T obj) {
+		if (obj == null) {
+			remove(clazz, id);
+			return;
+		}
+		Entries map = entries.get(clazz);
+		if (map == null || map.numeric.get(id) == null) {
+			map = getEntries(clazz);
+			if (map == null) {
+				return;
+			}
+		}
+		if (map.numeric.put(id, wrap(obj)) == null) {
+			size++;
+		}
+	}
+
+	public synchronized <T> void set(Class<T> clazz, Serializable id, T obj) {
+		if (id == null) {
+			return;
+		}
+		if (isNumeric(id)) {
+			set(clazz, ((Number)id).longValue(), obj);
+			return;
+		}
+		if (obj == null) {
+			remove(clazz, id);
+			return;
+		}
+		Entries map = entries.get(clazz);
+		if (map == null || map.other == null || !map.other.containsKey(id)) {
+			map = getEntries(clazz);
+			if (map == null) {
+				return;
+			}
+		}
+		if (map.other == null) {
+			map.other = new HashMap<>();
+		}
+		if (map.other.put(id, wrap(obj)) == null) {
+			size++;
+		}
+	}
+
+	/**
+	 * Caches the object unless one is already held for the id, returning whichever is now the cached instance 
+	 * (which is the given object if the scope is full)
+	 */
+	public synchronized <T> T setIfAbsent(Class<T> clazz, Serializable id, T obj) {
+		T existing = get(clazz, id);
+		if (existing != null) {
+			return existing;
+		}
+		set(clazz, id, obj);
+		return obj;
+	}
+
+	/**
+	 * Records that there is no object with the given id, until the given time to live has passed or an object 
+	 * is set for it
+	 */
+	public synchronized void setMissing(Class<?> clazz, Serializable id, long timeToLive, TimeUnit unit) {
+		if (id == null) {
+			return;
+		}
+		Missing missing = new Missing(System.nanoTime() + unit.toNanos(timeToLive));
+		Entries map = getEntries(clazz);
 		if (map == null) {
-			map = new HashMap<>();
-			put(clazz, map);
+			return;
+		}
+		Object previous;
+		if (isNumeric(id)) {
+			previous = map.numeric.put(((Number)id).longValue(), missing);
+		} else {
+			if (map.other == null) {
+				map.other = new HashMap<>();
+			}
+			previous = map.other.put(id, missing);
+		}
+		if (previous == null) {
+			size++;
+		}
+	}
+
+	/**
+	 * True if the id has been recorded as missing and the record has not expired
+	 */
+	public synchronized boolean isMissing(Class<?> clazz, Serializable id) {
+		Entries map = entries.get(clazz);
+		if (map == null || id == null) {
+			return false;
+		}
+		Object value;
+		if (isNumeric(id)) {
+			value = map.numeric.get(((Number)id).longValue());
+		} else {
+			value = map.other == null ? null : map.other.get(id);
+		}
+		if (!(value instanceof Missing)) {
+			return false;
+		}
+		if (System.nanoTime() - ((Missing)value).expires > 0) {
+			remove(clazz, id);
+			return false;
+		}
+		return true;
+	}
+
+	public synchronized void remove(Class<?> clazz, long id) {
+		Entries map = entries.get(clazz);
+		if (map != null && map.numeric.remove(id) != null) {
+			size--;
+		}
+	}
+
+	public synchronized void remove(Class<?> clazz, Serializable id) {
+		if (id == null) {
+			return;
+		}
+		if (isNumeric(id)) {
+			remove(clazz, ((Number)id).longValue());
+			return;
+		}
+		Entries map = entries.get(clazz);
+		if (map != null && map.other != null && map.other.remove(id) != null) {
+			size--;
+		}
+	}
+
+	/**
+	 * The entries for the class, or null if the scope is full and there is no room for another object.  
+	 * Replacing an object already held never needs room.
+	 */
+	private Entries getEntries(Class<?> clazz) {
+		if (size >= maxEntries && !makeRoom()) {
+			return null;
+		}
+		Entries map = entries.get(clazz);
+		if (map == null) {
+			map = new Entries();
+			entries.put(clazz, map);
+		}
+		return map;
+	}
+
+	/**
+	 * Drops collected references to make room, returning false if there is still none
+	 */
+	private boolean makeRoom() {
+		if (referenceMode != ReferenceMode.STRONG) {
+			size = 0;
+			for (Entries map : entries.values()) {
+				map.numeric.removeIf(ObjectCache::isCollected);
+				if (map.other != null) {
+					map.other.values().removeIf(ObjectCache::isCollected);
+				}
+				size += map.size();
+			}
+		}
+		if (size < maxEntries) {
+			return true;
+		}
+		if (!full) {
+			full = true;
+			logger.warn("Object cache is full at " + maxEntries + " entries - further objects will not be cached in this scope");
+		}
+		return false;
+	}
+
+	/**
+	 * Records the persisted values of an object, as read or last written
+	 */
+	public synchronized void setSnapshot(Object obj, Object[] values) {
+		if (snapshots == null) {
+			snapshots = new HashMap<>();
+			collected = new ReferenceQueue<>();
+		}
+		Reference<?> ref;
+		while ((ref = collected.poll()) != null) {
+			snapshots.remove(ref);
+		}
+		snapshots.put(new IdentityKey(obj, collected), values);
+	}
+
+	/**
+	 * The persisted values recorded for the object, or null if there are none
+	 */
+	public synchronized Object[] getSnapshot(Object obj) {
+		if (snapshots == null) {
+			return null;
+		}
+		return snapshots.get(new IdentityKey(obj, null));
+	}
+
+	public synchronized void removeSnapshot(Object obj) {
+		if (snapshots != null) {
+			snapshots.remove(new IdentityKey(obj, null));
+		}
+	}
+
+	/**
+	 * Records that objects of the class have been written in this scope, now
+	 * - kept through {@link #clear()}, so a scope still reads its own writes after dropping its objects
+	 */
+	public synchronized void recordWrite(Class<?> clazz) {
+		if (writes == null) {
+			writes = new HashMap<>();
+		}
+		writes.put(clazz, System.nanoTime());
+	}
+
+	/**
+	 * The {@link System#nanoTime()} of the last write of the class in this scope, or null if there has been none
+	 */
+	public synchronized Long getLastWrite(Class<?> clazz) {
+		return writes == null ? null : writes.get(clazz);
+	}
+
+	private static boolean isCollected(Object value) {
+		if (value instanceof Missing) {
+			return System.nanoTime() - ((Missing)value).expires > 0;
+		}
+		return ((Reference<?>)value).get() == null;
+	}
+
+	private Object wrap(Object obj) {
+		switch (referenceMode) {
+		case SOFT:
+			return new SoftReference<>(obj);
+		case WEAK:
+			return new WeakReference<>(obj);
+		default:
+			return obj;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T unwrap(Class<T> clazz, Object value) {
+		if (referenceMode != ReferenceMode.STRONG) {
+			return (T)((Reference<?>)value).get();
 		}
-		map.put(id, obj);
+		return (T)value;
 	}
 }
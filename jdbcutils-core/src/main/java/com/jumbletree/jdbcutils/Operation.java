@@ -0,0 +1,18 @@
+package com.jumbletree.jdbcutils;
+
+/**
+ * The {@link JDBCUtils} operation a {@link JDBCUtilsListener} event belongs to
+ */
+public enum Operation {
+	GET,
+	FIND,
+	GET_MANY,
+	GET_ALL,
+	QUERY,
+	GET_ONE_TO_MANY,
+	GET_MANY_TO_ONE,
+	GET_MANY_TO_MANY,
+	INSERT,
+	UPDATE,
+	DELETE
+}
@@ -0,0 +1,28 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.List;
+
+/**
+ * One page of results from a {@link Paginator}
+ */
+public class Page<T> {
+
+	private final List<T> items;
+	private final String cursor;
+
+	Page(List<T> items, String cursor) {
+		this.items = items;
+		this.cursor = cursor;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * The token for resuming after this page with {@link EntityQuery#paginate(int, String)}
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+}
@@ -0,0 +1,98 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pages through the results of an {@link EntityQuery} in id order using keyset (seek) pagination - each page
+ * is read with <code>WHERE id &gt; ? ORDER BY id LIMIT n</code> starting after the last id of the previous
+ * page, so a deep page costs the same as the first one, unlike OFFSET.  Each page is a separate query.
+ *
+ * The position can be saved with {@link #getCursor()} and the paging resumed later, even in another process,
+ * with {@link EntityQuery#paginate(int, String)}.
+ */
+public class Paginator<T> implements Iterator<Page<T>> {
+
+	private final EntityQuery<T> query;
+	private final EntityDescriptor<T> descriptor;
+	private final int pageSize;
+	private Object after;
+	private String cursor;
+	private Page<T> next;
+	private boolean finished;
+
+	Paginator(EntityQuery<T> query, EntityDescriptor<T> descriptor, int pageSize, String cursor) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive");
+		}
+		this.query = query;
+		this.descriptor = descriptor;
+		this.pageSize = pageSize;
+		this.after = cursor == null ? null : parseCursor(descriptor, cursor);
+		this.cursor = cursor;
+	}
+
+	private static Object parseCursor(EntityDescriptor<?> descriptor, String cursor) {
+		Class<?> type = descriptor.getIdProperty().getType();
+		try {
+			if (type.equals(int.class) || type.equals(Integer.class)) {
+				return Integer.valueOf(cursor);
+			} else if (type.equals(long.class) || type.equals(Long.class)) {
+				return Long.valueOf(cursor);
+			} else if (type.equals(UUID.class)) {
+				return UUID.fromString(cursor);
+			} else if (type.equals(String.class)) {
+				return cursor;
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor " + cursor + " for " + descriptor.getType().getName(), e);
+		}
+		throw new IllegalArgumentException("Cannot paginate " + descriptor.getType().getName() + " by an id of type " + type.getName());
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			List<T> items = query.page(after, pageSize);
+			if (items.isEmpty()) {
+				finished = true;
+			} else {
+				Serializable last = descriptor.getId(items.get(items.size() - 1));
+				next = new Page<>(items, last.toString());
+				//A short page must be the last, so don't go back for an empty one
+				finished = items.size() < pageSize;
+				after = last;
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public Page<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Page<T> page = next;
+		next = null;
+		cursor = page.getCursor();
+		return page;
+	}
+
+	/**
+	 * The token for resuming after the last page read, or null if none has been read and no cursor was given
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public Stream<Page<T>> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+}
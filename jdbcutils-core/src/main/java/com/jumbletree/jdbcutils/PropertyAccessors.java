@@ -0,0 +1,187 @@
+package com.jumbletree.jdbcutils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns getter and setter methods into functional accessors.
+ * 
+ * Where possible the accessor is spun with {@link LambdaMetafactory}, which the JIT can inline like 
+ * a direct call.  Methods that cannot be linked that way (non-public classes, or classes that are not
+ * visible from this library's class loader) fall back to plain reflection.
+ */
+final class PropertyAccessors {
+
+	private static final Logger logger = LoggerFactory.getLogger(PropertyAccessors.class);
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private PropertyAccessors() {
+	}
+
+	/*
+	 * Setters specialised by primitive type, so values read from a result set can be written without boxing
+	 */
+
+	@FunctionalInterface
+	interface IntSetter {
+		void set(Object bean, int value);
+	}
+
+	@FunctionalInterface
+	interface LongSetter {
+		void set(Object bean, long value);
+	}
+
+	@FunctionalInterface
+	interface DoubleSetter {
+		void set(Object bean, double value);
+	}
+
+	@FunctionalInterface
+	interface FloatSetter {
+		void set(Object bean, float value);
+	}
+
+	@FunctionalInterface
+	interface BooleanSetter {
+		void set(Object bean, boolean value);
+	}
+
+	static PropertyGetter getter(Method getter) {
+		PropertyGetter accessor = link(getter, PropertyGetter.class, "get", MethodType.methodType(Object.class, Object.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		return bean -> {
+			try {
+				return getter.invoke(bean);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw rethrow(getter, e);
+			}
+		};
+	}
+
+	static PropertySetter setter(Method setter) {
+		PropertySetter accessor = link(setter, PropertySetter.class, "set", MethodType.methodType(void.class, Object.class, Object.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		return (bean, value) -> {
+			try {
+				setter.invoke(bean, value);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw rethrow(setter, e);
+			}
+		};
+	}
+
+	static IntSetter intSetter(Method setter) {
+		IntSetter accessor = link(setter, IntSetter.class, "set", MethodType.methodType(void.class, Object.class, int.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		PropertySetter fallback = setter(setter);
+		return (bean, value) -> fallback.set(bean, value);
+	}
+
+	static LongSetter longSetter(Method setter) {
+		LongSetter accessor = link(setter, LongSetter.class, "set", MethodType.methodType(void.class, Object.class, long.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		PropertySetter fallback = setter(setter);
+		return (bean, value) -> fallback.set(bean, value);
+	}
+
+	static DoubleSetter doubleSetter(Method setter) {
+		DoubleSetter accessor = link(setter, DoubleSetter.class, "set", MethodType.methodType(void.class, Object.class, double.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		PropertySetter fallback = setter(setter);
+		return (bean, value) -> fallback.set(bean, value);
+	}
+
+	static FloatSetter floatSetter(Method setter) {
+		FloatSetter accessor = link(setter, FloatSetter.class, "set", MethodType.methodType(void.class, Object.class, float.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		PropertySetter fallback = setter(setter);
+		return (bean, value) -> fallback.set(bean, value);
+	}
+
+	static BooleanSetter booleanSetter(Method setter) {
+		BooleanSetter accessor = link(setter, BooleanSetter.class, "set", MethodType.methodType(void.class, Object.class, boolean.class));
+		if (accessor != null) {
+			return accessor;
+		}
+		PropertySetter fallback = setter(setter);
+		return (bean, value) -> fallback.set(bean, value);
+	}
+
+	/**
+	 * Spins an implementation of the given functional interface that calls the method directly, or returns
+	 * null if the method cannot be linked.  Boxing and unboxing between the interface's signature and the 
+	 * method's is handled by the metafactory.
+	 */
+	private static <A> A link(Method method, Class<A> accessorType, String name, MethodType accessorSignature) {
+		if (!canLink(method)) {
+			return null;
+		}
+		try {
+			MethodHandle handle = lookup.unreflect(method);
+			MethodType instantiated = handle.type().wrap();
+			if (accessorSignature.returnType() == void.class) {
+				instantiated = instantiated.changeReturnType(void.class);
+			}
+			for (int i = 1; i < accessorSignature.parameterCount(); i++) {
+				if (accessorSignature.parameterType(i).isPrimitive()) {
+					instantiated = instantiated.changeParameterType(i, accessorSignature.parameterType(i));
+				}
+			}
+			CallSite site = LambdaMetafactory.metafactory(lookup, name, MethodType.methodType(accessorType),
+					accessorSignature, handle, instantiated);
+			return accessorType.cast(site.getTarget().invoke());
+		} catch (Throwable e) {
+			logger.debug("Falling back to reflection for " + method, e);
+			return null;
+		}
+	}
+
+	/**
+	 * The generated accessor class lives alongside this one, so it must be able to see the target class
+	 */
+	private static boolean canLink(Method method) {
+		Class<?> declaringClass = method.getDeclaringClass();
+		if (!Modifier.isPublic(declaringClass.getModifiers()) || !Modifier.isPublic(method.getModifiers())) {
+			return false;
+		}
+		try {
+			return Class.forName(declaringClass.getName(), false, PropertyAccessors.class.getClassLoader()) == declaringClass;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static RuntimeException rethrow(Method method, Exception e) {
+		Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException)cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error)cause;
+		}
+		return new IllegalStateException("Error invoking " + method, cause);
+	}
+}
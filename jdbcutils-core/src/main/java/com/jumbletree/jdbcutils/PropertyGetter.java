@@ -0,0 +1,9 @@
+package com.jumbletree.jdbcutils;
+
+/**
+ * Reads a property value from an entity.  See {@link PropertyAccessors}.
+ */
+@FunctionalInterface
+public interface PropertyGetter {
+	Object get(Object bean);
+}
@@ -0,0 +1,9 @@
+package com.jumbletree.jdbcutils;
+
+/**
+ * Writes a property value to an entity.  See {@link PropertyAccessors}.
+ */
+@FunctionalInterface
+public interface PropertySetter {
+	void set(Object bean, Object value);
+}
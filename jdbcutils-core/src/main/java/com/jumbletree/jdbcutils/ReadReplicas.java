@@ -0,0 +1,175 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A pool of read replicas for {@link JDBCUtils}, which routes each read to one of them using a
+ * {@link ReplicaPolicy}:
+ *
+ * <pre>
+ * ReadReplicas replicas = new ReadReplicas(Arrays.asList(replica1, replica2, replica3), ReplicaPolicy.leastOutstanding());
+ * JDBCUtils utils = new JDBCUtils(primary, replicas);
+ * </pre>
+ *
+ * A replica that can't be reached is taken out of rotation for the ejection time and the read is retried
+ * elsewhere; with {@link #monitorLag(ToLongFunction, long, long, TimeUnit)} replicas too far behind the primary are
+ * taken out until they catch up.  With no replica in rotation reads go to the primary.
+ *
+ * After a write, reads of the written class in the same {@link ObjectCache} scope go to the primary for the
+ * stickiness window, so a request always sees its own writes.
+ */
+public class ReadReplicas implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReadReplicas.class);
+
+	private final List<Replica> replicas;
+	private final ReplicaPolicy policy;
+	private volatile long ejectionTime = TimeUnit.SECONDS.toNanos(30);
+	private volatile long stickiness = TimeUnit.SECONDS.toNanos(5);
+	private ScheduledExecutorService lagMonitor;
+
+	/**
+	 * Creates a pool that takes the replicas in turn
+	 */
+	public ReadReplicas(List<JdbcTemplate> templates) {
+		this(templates, ReplicaPolicy.roundRobin());
+	}
+
+	public ReadReplicas(List<JdbcTemplate> templates, ReplicaPolicy policy) {
+		if (templates.isEmpty()) {
+			throw new IllegalArgumentException("At least one replica is required");
+		}
+		List<Replica> replicas = new ArrayList<>(templates.size());
+		for (JdbcTemplate template : templates) {
+			replicas.add(new Replica(template));
+		}
+		this.replicas = Collections.unmodifiableList(replicas);
+		this.policy = policy;
+	}
+
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * How long a replica that fails is kept out of rotation.  30 seconds by default.
+	 */
+	public void setEjectionTime(long time, TimeUnit unit) {
+		this.ejectionTime = unit.toNanos(time);
+	}
+
+	/**
+	 * How long after a write reads of the written class go to the primary.  5 seconds by default; zero turns
+	 * this off.
+	 */
+	public void setPrimaryStickiness(long time, TimeUnit unit) {
+		this.stickiness = unit.toNanos(time);
+	}
+
+	/**
+	 * Checks every replica's lag on a background thread, taking out of rotation those more than maxLag
+	 * milliseconds behind and those the probe fails for.  For Postgres, for example:
+	 *
+	 * <pre>
+	 * replicas.monitorLag(t -&gt; t.queryForObject(
+	 *     "SELECT COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)::bigint", Long.class),
+	 *     5000, 1, TimeUnit.SECONDS);
+	 * </pre>
+	 * @param lagProbe returns a replica's lag in milliseconds
+	 */
+	public synchronized void monitorLag(ToLongFunction<JdbcTemplate> lagProbe, long maxLag, long interval, TimeUnit unit) {
+		if (lagMonitor != null) {
+			lagMonitor.shutdownNow();
+		}
+		lagMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "jdbcutils-replica-lag");
+			thread.setDaemon(true);
+			return thread;
+		});
+		lagMonitor.scheduleWithFixedDelay(() -> checkLag(lagProbe, maxLag), 0, interval, unit);
+	}
+
+	void checkLag(ToLongFunction<JdbcTemplate> lagProbe, long maxLag) {
+		for (Replica replica : replicas) {
+			try {
+				long lag = lagProbe.applyAsLong(replica.getTemplate());
+				if (lag > maxLag && !replica.isEjected()) {
+					logger.warn("Replica is " + lag + "ms behind, taking it out of rotation");
+				}
+				replica.setLagging(lag > maxLag);
+			} catch (RuntimeException e) {
+				logger.warn("Couldn't check replica lag, taking it out of rotation", e);
+				replica.eject(ejectionTime);
+			}
+		}
+	}
+
+	/**
+	 * True if a write at the given time, from {@link ObjectCache#getLastWrite(Class)}, is recent enough that
+	 * reads should go to the primary
+	 */
+	boolean isSticky(Long lastWrite) {
+		return lastWrite != null && System.nanoTime() - lastWrite < stickiness;
+	}
+
+	/**
+	 * Chooses a replica in rotation, or returns null if there are none
+	 */
+	Replica choose() {
+		List<Replica> candidates = new ArrayList<>(replicas.size());
+		for (Replica replica : replicas) {
+			if (!replica.isEjected()) {
+				candidates.add(replica);
+			}
+		}
+		return candidates.isEmpty() ? null : policy.choose(candidates);
+	}
+
+	/**
+	 * Runs a read on a chosen replica, moving on to another if it can't be reached, and finally to the fallback
+	 */
+	<R> R read(JdbcTemplate fallback, Function<JdbcTemplate, R> operation) {
+		while (true) {
+			Replica replica = choose();
+			if (replica == null) {
+				return operation.apply(fallback);
+			}
+			replica.start();
+			long start = System.nanoTime();
+			try {
+				R result = operation.apply(replica.getTemplate());
+				replica.finish(System.nanoTime() - start);
+				return result;
+			} catch (DataAccessResourceFailureException | TransientDataAccessResourceException e) {
+				replica.fail();
+				replica.eject(ejectionTime);
+				logger.warn("Read replica failed, taking it out of rotation", e);
+			} catch (RuntimeException e) {
+				//An error in the query itself says nothing about the replica
+				replica.finish(System.nanoTime() - start);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (lagMonitor != null) {
+			lagMonitor.shutdownNow();
+			lagMonitor = null;
+		}
+	}
+}
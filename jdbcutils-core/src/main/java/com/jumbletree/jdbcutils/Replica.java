@@ -0,0 +1,73 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * One read replica in a {@link ReadReplicas} pool, with the statistics a {@link ReplicaPolicy} chooses by
+ */
+public final class Replica {
+
+	//Weight of each new latency sample in the moving average
+	private static final double ALPHA = 0.2;
+
+	private final JdbcTemplate template;
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private volatile double latency;
+	private volatile long ejectedUntil;
+	private volatile boolean lagging;
+
+	Replica(JdbcTemplate template) {
+		this.template = template;
+	}
+
+	public JdbcTemplate getTemplate() {
+		return template;
+	}
+
+	/**
+	 * The number of reads currently running on this replica
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * The exponentially weighted moving average of read times, in nanoseconds, or zero before the first read
+	 */
+	public double getLatency() {
+		return latency;
+	}
+
+	/**
+	 * True if the replica is currently out of rotation, because it failed or is too far behind the primary
+	 */
+	public boolean isEjected() {
+		long until = ejectedUntil;
+		return lagging || (until != 0 && System.nanoTime() - until < 0);
+	}
+
+	void start() {
+		outstanding.incrementAndGet();
+	}
+
+	void finish(long nanos) {
+		outstanding.decrementAndGet();
+		double current = latency;
+		latency = current == 0 ? nanos : current + ALPHA * (nanos - current);
+	}
+
+	void fail() {
+		outstanding.decrementAndGet();
+	}
+
+	void eject(long nanos) {
+		//Zero is reserved for never ejected
+		ejectedUntil = (System.nanoTime() + nanos) | 1;
+	}
+
+	void setLagging(boolean lagging) {
+		this.lagging = lagging;
+	}
+}
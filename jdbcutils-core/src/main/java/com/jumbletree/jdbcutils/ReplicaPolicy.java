@@ -0,0 +1,71 @@
+package com.jumbletree.jdbcutils;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the replica for each read from those currently in rotation
+ */
+@FunctionalInterface
+public interface ReplicaPolicy {
+
+	/**
+	 * @param replicas the replicas in rotation, never empty
+	 */
+	Replica choose(List<Replica> replicas);
+
+	/**
+	 * Takes each replica in turn
+	 */
+	static ReplicaPolicy roundRobin() {
+		AtomicInteger next = new AtomicInteger();
+		return replicas -> replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+	}
+
+	/**
+	 * Takes the replica with the fewest reads running, which adapts to slow replicas under load
+	 */
+	static ReplicaPolicy leastOutstanding() {
+		AtomicInteger next = new AtomicInteger();
+		return replicas -> {
+			//Start from a rotating position so ties don't always go to the first replica
+			int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+			Replica best = null;
+			for (int i = 0; i < replicas.size(); i++) {
+				Replica replica = replicas.get((start + i) % replicas.size());
+				if (best == null || replica.getOutstanding() < best.getOutstanding()) {
+					best = replica;
+				}
+			}
+			return best;
+		};
+	}
+
+	/**
+	 * Chooses at random, weighting each replica by the inverse of its average latency (scaled up by the reads it 
+	 * has running), so faster replicas get proportionally more reads.  Replicas with no reads yet are tried first.
+	 */
+	static ReplicaPolicy latencyWeighted() {
+		return replicas -> {
+			double[] weights = new double[replicas.size()];
+			double total = 0;
+			for (int i = 0; i < weights.length; i++) {
+				Replica replica = replicas.get(i);
+				if (replica.getLatency() == 0) {
+					return replica;
+				}
+				weights[i] = 1 / (replica.getLatency() * (1 + replica.getOutstanding()));
+				total += weights[i];
+			}
+			double pick = ThreadLocalRandom.current().nextDouble(total);
+			for (int i = 0; i < weights.length; i++) {
+				pick -= weights[i];
+				if (pick < 0) {
+					return replicas.get(i);
+				}
+			}
+			return replicas.get(weights.length - 1);
+		};
+	}
+}
@@ -0,0 +1,161 @@
+package com.jumbletree.jdbcutils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * Iterates a query one row at a time over a forward only, read only cursor, so the results never need to
+ * fit in memory.  Outside of a Spring managed transaction auto-commit is switched off for the life of the
+ * cursor, as some drivers (Postgres in particular) ignore the fetch size and read everything otherwise.
+ *
+ * The statement and connection are released when the last row has been read, on the first error, or on
+ * {@link #close()}, whichever comes first.
+ */
+final class ResultSetIterator<T> implements Iterator<T>, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResultSetIterator.class);
+
+	/**
+	 * Told when the cursor is released
+	 */
+	interface Completion {
+		void finished(int rows, boolean failed);
+	}
+
+	private final JdbcTemplate template;
+	private final String sql;
+	private final RowMapper<T> mapper;
+	private final DataSource dataSource;
+	private Connection con;
+	private boolean restoreAutoCommit;
+	private PreparedStatement ps;
+	private ResultSet rs;
+	private int row;
+	private boolean ready;
+	private boolean closed;
+	private boolean failed;
+	private Completion completion;
+
+	ResultSetIterator(JdbcTemplate template, String sql, Object[] args, RowMapper<T> mapper, int fetchSize) {
+		this.template = template;
+		this.sql = sql;
+		this.mapper = mapper;
+		this.dataSource = template.getDataSource();
+		try {
+			con = DataSourceUtils.getConnection(dataSource);
+			if (!DataSourceUtils.isConnectionTransactional(con, dataSource) && con.getAutoCommit()) {
+				con.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			new ArgumentPreparedStatementSetter(args).setValues(ps);
+			rs = ps.executeQuery();
+		} catch (SQLException e) {
+			close();
+			throw template.getExceptionTranslator().translate("Streaming query", sql, e);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets what to tell when the cursor is released, with the number of rows read
+	 */
+	void onCompletion(Completion completion) {
+		this.completion = completion;
+	}
+
+	/**
+	 * Wraps the iterator in a sequential stream that closes it when the stream is closed
+	 */
+	Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		if (!ready) {
+			try {
+				ready = rs.next();
+			} catch (SQLException e) {
+				fail();
+				throw template.getExceptionTranslator().translate("Streaming query", sql, e);
+			}
+			if (!ready) {
+				close();
+			}
+		}
+		return ready;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ready = false;
+		try {
+			return mapper.mapRow(rs, row++);
+		} catch (SQLException e) {
+			fail();
+			throw template.getExceptionTranslator().translate("Streaming query", sql, e);
+		} catch (RuntimeException e) {
+			fail();
+			throw e;
+		}
+	}
+
+	private void fail() {
+		failed = true;
+		close();
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		JdbcUtils.closeResultSet(rs);
+		JdbcUtils.closeStatement(ps);
+		if (con == null) {
+			return;
+		}
+		if (restoreAutoCommit) {
+			try {
+				con.commit();
+				con.setAutoCommit(true);
+			} catch (SQLException e) {
+				logger.warn("Couldn't restore auto-commit after streaming query", e);
+			}
+		}
+		DataSourceUtils.releaseConnection(con, dataSource);
+		if (completion != null) {
+			completion.finished(row, failed);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.jumbletree.jdbcutils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field whose value decides which shard an entity lives on in a {@link ShardedJDBCUtils}.  It must
+ * be the {@link javax.persistence.Id} or a {@link javax.persistence.Column}.  Classes without one are not
+ * sharded and live on the first shard.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ShardKey {
+}
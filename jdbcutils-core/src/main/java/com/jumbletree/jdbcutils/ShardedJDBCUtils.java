@@ -0,0 +1,306 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Spreads entities over several databases by hashing each entity's {@link ShardKey}:
+ *
+ * <pre>
+ * ShardedJDBCUtils utils = new ShardedJDBCUtils(shard1, shard2, shard3);
+ * utils.insert(order);                                   //goes to the shard for order.getTenantId()
+ * List&lt;Order&gt; orders = utils.queryFor(Order.class, tenant);  //one shard, when tenant_id is the shard key
+ * List&lt;Order&gt; all = utils.getAll(Order.class);             //every shard in parallel
+ * </pre>
+ *
+ * Operations that identify a shard - an object, an id when the class is sharded by its id, or a constraint
+ * on the shard key column - go to that shard alone.  The rest run on every shard at once and the results are
+ * merged, in shard order.  Classes without a shard key live on the first shard.
+ *
+ * The {@link ObjectCache} is shared by the shards, so ids must be unique across them - assigned, UUIDs, or
+ * sequences that don't overlap - and a class sharded by its id can't use generated ids, as the shard has to
+ * be known before the insert.  Key hashes are stable across JVMs for numbers, strings, enums and UUIDs; other
+ * key types need a hashCode that is too.  Adding a shard moves most keys, so the shard count is fixed for the
+ * life of the data.
+ */
+public class ShardedJDBCUtils implements AutoCloseable {
+
+	private final List<JDBCUtils> shards;
+	private final List<AsyncJDBCUtils> scatter;
+	private final ExecutorService executor;
+
+	public ShardedJDBCUtils(JdbcTemplate ... templates) {
+		this(toUtils(templates));
+	}
+
+	/**
+	 * Uses the given instances as the shards, in order, so each can be configured separately - with read
+	 * replicas, say
+	 */
+	public ShardedJDBCUtils(List<JDBCUtils> shards) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+		this.executor = AsyncJDBCUtils.createExecutor(shards.size());
+		List<AsyncJDBCUtils> scatter = new ArrayList<>(shards.size());
+		for (JDBCUtils shard : shards) {
+			scatter.add(new AsyncJDBCUtils(shard, executor));
+		}
+		this.scatter = scatter;
+	}
+
+	private static List<JDBCUtils> toUtils(JdbcTemplate[] templates) {
+		List<JDBCUtils> shards = new ArrayList<>(templates.length);
+		for (JdbcTemplate template : templates) {
+			shards.add(new JDBCUtils(template));
+		}
+		return shards;
+	}
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	public JDBCUtils getShard(int index) {
+		return shards.get(index);
+	}
+
+	public List<JDBCUtils> getShards() {
+		return shards;
+	}
+
+	/**
+	 * The shard that owns the given shard key value, for operations not offered here
+	 */
+	public JDBCUtils getShardFor(Object key) {
+		return shards.get(shardIndex(key));
+	}
+
+	/**
+	 * The shard the given object lives on
+	 */
+	public JDBCUtils getShardOf(Object o) {
+		EntityProperty key = EntityDescriptor.of(o.getClass()).getShardKeyProperty();
+		if (key == null) {
+			return shards.get(0);
+		}
+		Object value;
+		try {
+			value = key.get(o);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Couldn't access shard key of " + o.getClass().getName(), e);
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("Shard key of " + o.getClass().getName() + " is null");
+		}
+		return getShardFor(value);
+	}
+
+	int shardIndex(Object key) {
+		long hash;
+		if (key instanceof Integer || key instanceof Long || key instanceof Short || key instanceof Byte) {
+			//So an int and a long with the same value land together
+			hash = ((Number)key).longValue();
+		} else if (key instanceof Enum) {
+			hash = ((Enum<?>)key).name().hashCode();
+		} else {
+			hash = key.hashCode();
+		}
+		//The murmur3 finalizer, so sequential keys spread evenly
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return (int)Math.floorMod(hash, (long)shards.size());
+	}
+
+	/**
+	 * The single shard holding the class's rows with the given id, or null if the id doesn't say
+	 */
+	private JDBCUtils getShardForId(Class<?> clazz, Object id) {
+		EntityDescriptor<?> descriptor = EntityDescriptor.of(clazz);
+		EntityProperty key = descriptor.getShardKeyProperty();
+		if (key == null) {
+			return shards.get(0);
+		}
+		return key == descriptor.getIdProperty() ? getShardFor(id) : null;
+	}
+
+	/**
+	 * The single shard holding the class's rows that match the constraints, or null if none of them is on the
+	 * shard key
+	 */
+	private JDBCUtils getShardForConstraints(Class<?> clazz, Object ... constraints) {
+		EntityDescriptor<?> descriptor = EntityDescriptor.of(clazz);
+		EntityProperty key = descriptor.getShardKeyProperty();
+		if (key == null) {
+			return shards.get(0);
+		}
+		for (Object constraint : constraints) {
+			if (descriptor.getManyToOne(constraint.getClass()) == key) {
+				return getShardFor(EntityDescriptor.of(constraint.getClass()).getId(constraint));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the operation on every shard in parallel, with the caller's {@link ObjectCache}, and returns the
+	 * results in shard order
+	 */
+	public <R> List<R> scatter(Function<JDBCUtils, R> operation) {
+		if (shards.size() == 1) {
+			return Collections.singletonList(operation.apply(shards.get(0)));
+		}
+		List<CompletableFuture<R>> futures = new ArrayList<>(shards.size());
+		for (AsyncJDBCUtils shard : scatter) {
+			futures.add(shard.supply(operation));
+		}
+		List<R> results = new ArrayList<>(futures.size());
+		try {
+			for (CompletableFuture<R> future : futures) {
+				results.add(future.join());
+			}
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
+		}
+		return results;
+	}
+
+	private <T> List<T> gather(Function<JDBCUtils, List<T>> operation) {
+		List<T> merged = new ArrayList<>();
+		for (List<T> list : scatter(operation)) {
+			merged.addAll(list);
+		}
+		return merged;
+	}
+
+	public <T> T get(Class<T> clazz, int id) {
+		JDBCUtils shard = getShardForId(clazz, id);
+		if (shard != null) {
+			return shard.get(clazz, id);
+		}
+		Optional<T> t = find(clazz, id);
+		if (!t.isPresent()) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		return t.get();
+	}
+
+	/**
+	 * Finds an object by id, on its shard when the class is sharded by id and otherwise by asking every shard
+	 */
+	public <T> Optional<T> find(Class<T> clazz, Serializable id) {
+		JDBCUtils shard = getShardForId(clazz, id);
+		if (shard != null) {
+			return shard.find(clazz, id);
+		}
+		//A miss on one shard says nothing about the others, so isn't recorded
+		for (Optional<T> t : scatter(utils -> utils.find(clazz, id, false))) {
+			if (t.isPresent()) {
+				return t;
+			}
+		}
+		return Optional.empty();
+	}
+
+	public <T> List<T> getAll(Class<T> clazz) {
+		if (EntityDescriptor.of(clazz).getShardKeyProperty() == null) {
+			return shards.get(0).getAll(clazz);
+		}
+		return gather(utils -> utils.getAll(clazz));
+	}
+
+	/**
+	 * As {@link JDBCUtils#queryFor(Class, Object...)}, on one shard if a constraint is on the shard key and
+	 * otherwise on all of them
+	 */
+	public <T> List<T> queryFor(Class<T> targetClass, Object ... constraints) {
+		JDBCUtils shard = getShardForConstraints(targetClass, constraints);
+		if (shard != null) {
+			return shard.queryFor(targetClass, constraints);
+		}
+		return gather(utils -> utils.queryFor(targetClass, constraints));
+	}
+
+	public <T> List<T> getOneToMany(Object source, Class<T> targetClass) {
+		JDBCUtils shard = getShardForConstraints(targetClass, source);
+		if (shard != null) {
+			return shard.getOneToMany(source, targetClass);
+		}
+		return gather(utils -> utils.getOneToMany(source, targetClass));
+	}
+
+	public void insert(Object o) {
+		checkInsertable(o);
+		getShardOf(o).insert(o);
+	}
+
+	/**
+	 * Inserts the objects in batches, each shard's share in parallel
+	 */
+	public void insertAll(Collection<?> objects) {
+		Map<JDBCUtils, List<Object>> byShard = new IdentityHashMap<>();
+		for (Object o : objects) {
+			checkInsertable(o);
+			byShard.computeIfAbsent(getShardOf(o), shard -> new ArrayList<>()).add(o);
+		}
+		scatter(utils -> {
+			List<Object> group = byShard.get(utils);
+			if (group != null) {
+				utils.insertAll(group);
+			}
+			return null;
+		});
+	}
+
+	private static void checkInsertable(Object o) {
+		EntityDescriptor<?> descriptor = EntityDescriptor.of(o.getClass());
+		if (descriptor.isGeneratedId() && descriptor.getShardKeyProperty() == descriptor.getIdProperty()) {
+			throw new IllegalArgumentException(o.getClass().getName() + " is sharded by its id, so the id can't be generated");
+		}
+	}
+
+	/**
+	 * Updates the object on its shard.  The shard key can't be changed by an update - delete and insert instead.
+	 */
+	public void update(Object o) {
+		getShardOf(o).update(o);
+	}
+
+	public void delete(Object o) {
+		getShardOf(o).delete(o);
+	}
+
+	/**
+	 * Shuts down the threads used for scatter-gather.  The shards themselves are left as they are.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process wide, bounded cache of entity state that sits under the per-thread {@link ObjectCache}.  Set one
+ * with {@link JDBCUtils#setSharedCache(SharedCache)} and {@link #enable(Class) enable} it for the classes that
+ * benefit, typically reference data that is read on every request and rarely written.
+ *
+ * The cache holds the column values rather than the objects, and each {@link #get(Class, Serializable)} builds a
+ * new instance, so threads never share a mutable entity.  Dates and byte arrays are copied in and out too, so
+ * changes made in place to one instance's values are not seen by any other.  When the total weight goes over the maximum an entry
+ * is evicted by sampling a few entries at random and removing the least frequently read, with the counts of the survivors
+ * halved so that formerly popular entries age out.  Entries can also expire after a per-class time to live.
+ *
+ * Writes made through {@link JDBCUtils} invalidate the affected entries; writes made any other way are only
+ * picked up when an entry expires.  A loader takes a {@link #stamp(Class, Serializable) stamp} before reading
+ * the row and passes it to {@link #put(Class, Serializable, Object, long)}, which drops the load if the entry has
+ * been invalidated since, so a read that raced a write can't put the old state back.  Ids can also be recorded as missing, with their own (short) time to live.
+ */
+public class SharedCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(SharedCache.class);
+
+	private static final int SAMPLE_SIZE = 8;
+	private static final int MAX_FREQUENCY = 255;
+	private static final int STRIPES = 1024;
+
+	private static final class Key {
+		private final Class<?> clazz;
+		private final Serializable id;
+
+		Key(Class<?> clazz, Serializable id) {
+			this.clazz = clazz;
+			this.id = normalise(id);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * clazz.hashCode() + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key)obj;
+			return clazz == other.clazz && id.equals(other.id);
+		}
+	}
+
+	/**
+	 * An entry with no values records a missing id
+	 */
+	private static final class Entry {
+		private final Key key;
+		private final Object[] values;
+		private final long weight;
+		private final long expires;
+		//Racy increments lose the odd count, which doesn't matter for choosing a victim
+		private volatile int frequency;
+		//Position in the sampling index, guarded by its lock
+		private int slot = -1;
+
+		Entry(Key key, Object[] values, long weight, long expires) {
+			this.key = key;
+			this.values = values;
+			this.weight = weight;
+			this.expires = expires;
+		}
+
+		boolean isExpired(long now) {
+			return expires != 0 && now - expires > 0;
+		}
+	}
+
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Class<?>, Long> timeToLive = new ConcurrentHashMap<>();
+	//So events from other nodes can be resolved whichever class loader the entities were loaded by
+	private final ConcurrentHashMap<String, Class<?>> enabledByName = new ConcurrentHashMap<>();
+	private final AtomicLong weight = new AtomicLong();
+	//Every entry in the map, in no order, so eviction can sample evenly.  Changes to the map's membership are 
+	//made holding this lock so the two agree; reads don't take it.
+	private final Object lock = new Object();
+	private Entry[] slots = new Entry[16];
+	private int slotCount;
+	//Bumped by invalidations, per stripe of keys and for everything, so a load that raced a write isn't stored
+	private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+	private final AtomicLong clears = new AtomicLong();
+	private final long maximumWeight;
+	private final ToLongFunction<Object> weigher;
+
+	/**
+	 * Creates a cache bounded to the given number of entries
+	 */
+	public SharedCache(long maximumSize) {
+		this(maximumSize, o -> 1);
+	}
+
+	/**
+	 * Creates a cache bounded by total weight, where the weigher gives an estimate of each entity's size in
+	 * whatever unit the maximum is expressed in
+	 */
+	public SharedCache(long maximumWeight, ToLongFunction<Object> weigher) {
+		if (maximumWeight < 1) {
+			throw new IllegalArgumentException("Maximum weight must be positive");
+		}
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Enables caching for the given class, with no expiry
+	 * @throws IllegalArgumentException if the class can't be copied in and out of the cache - it needs a public
+	 * no argument constructor and a getter and setter for every column
+	 */
+	public void enable(Class<?> clazz) {
+		checkCacheable(clazz);
+		enabledByName.put(clazz.getName(), clazz);
+		timeToLive.put(clazz, 0L);
+	}
+
+	/**
+	 * Enables caching for the given class, with entries expiring the given time after they are loaded
+	 * @throws IllegalArgumentException as for {@link #enable(Class)}
+	 */
+	public void enable(Class<?> clazz, long timeToLive, TimeUnit unit) {
+		if (timeToLive <= 0) {
+			throw new IllegalArgumentException("Time to live must be positive");
+		}
+		checkCacheable(clazz);
+		enabledByName.put(clazz.getName(), clazz);
+		this.timeToLive.put(clazz, unit.toNanos(timeToLive));
+	}
+
+	/**
+	 * Checks up front what {@link #put(Class, Serializable, Object, long) put} and {@link #hydrate(Class, Object[])}
+	 * need, rather than failing on every load and hit
+	 */
+	private static void checkCacheable(Class<?> clazz) {
+		try {
+			clazz.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(clazz.getName() + " has no public no argument constructor, so can't be cached", e);
+		}
+		for (EntityProperty column : EntityDescriptor.of(clazz).getColumns()) {
+			if (column.getGetterAccessor() == null || column.getSetterAccessor() == null) {
+				throw new IllegalArgumentException(clazz.getName() + " has no getter or setter for " + column.getName() + ", so can't be cached");
+			}
+		}
+	}
+
+	public void disable(Class<?> clazz) {
+		timeToLive.remove(clazz);
+		enabledByName.remove(clazz.getName(), clazz);
+		invalidateAll(clazz);
+	}
+
+	public boolean isEnabled(Class<?> clazz) {
+		return timeToLive.containsKey(clazz);
+	}
+
+	/**
+	 * The enabled class with the given name, or null if there isn't one
+	 */
+	Class<?> getEnabledClass(String name) {
+		return enabledByName.get(name);
+	}
+
+	/**
+	 * Returns a new instance holding the cached state for the given id, or null if it isn't cached
+	 */
+	public <T> T get(Class<T> clazz, Serializable id) {
+		if (id == null || !isEnabled(clazz)) {
+			return null;
+		}
+		Key key = new Key(clazz, id);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.values == null) {
+			return null;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			discard(entry);
+			return null;
+		}
+		int frequency = entry.frequency;
+		if (frequency < MAX_FREQUENCY) {
+			entry.frequency = frequency + 1;
+		}
+		return hydrate(clazz, entry.values);
+	}
+
+	/**
+	 * The invalidation stamp for the given entry, to be taken before its row is read from the database
+	 */
+	public long stamp(Class<?> clazz, Serializable id) {
+		//Both only ever increase, so the sum changes whenever either does
+		return clears.get() + generations.get(stripe(clazz, id));
+	}
+
+	/**
+	 * Integral ids as Longs, as in the {@link ObjectCache}, so an entry is found whichever of int or long it was
+	 * stored and looked up with
+	 */
+	private static Serializable normalise(Serializable id) {
+		if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+			return ((Number)id).longValue();
+		}
+		return id;
+	}
+
+	private static int stripe(Class<?> clazz, Serializable id) {
+		id = normalise(id);
+		int hash = 31 * clazz.hashCode() + (id == null ? 0 : id.hashCode());
+		return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+	}
+
+	/**
+	 * Caches the given object, which must be known to be current, if caching is enabled for its class
+	 */
+	public void put(Class<?> clazz, Serializable id, Object o) {
+		put(clazz, id, o, stamp(clazz, id));
+	}
+
+	/**
+	 * Caches the state of the given object, loaded after the given {@link #stamp(Class, Serializable) stamp} was
+	 * taken, if caching is enabled for its class and the entry hasn't been invalidated since
+	 */
+	public void put(Class<?> clazz, Serializable id, Object o, long stamp) {
+		Long ttl = timeToLive.get(clazz);
+		if (ttl == null || id == null || o == null || stamp(clazz, id) != stamp) {
+			return;
+		}
+		List<EntityProperty> columns = EntityDescriptor.of(clazz).getColumns();
+		Object[] values = new Object[columns.size()];
+		for (int i = 0; i < values.length; i++) {
+			try {
+				values[i] = EntityProperty.copyValue(columns.get(i).get(o));
+			} catch (NoSuchMethodException e) {
+				//Can't be copied, so don't cache it
+				return;
+			}
+		}
+		long expires = 0;
+		if (ttl != 0) {
+			//Zero is reserved for no expiry
+			expires = (System.nanoTime() + ttl) | 1;
+		}
+		Key key = new Key(clazz, id);
+		store(key, new Entry(key, values, Math.max(1, weigher.applyAsLong(o)), expires), stamp);
+	}
+
+	private void store(Key key, Entry entry, long stamp) {
+		synchronized (lock) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				removeSlot(previous);
+			}
+			addSlot(entry);
+			weight.addAndGet(entry.weight - (previous == null ? 0 : previous.weight));
+		}
+		//An invalidation bumps the stamp before removing, so either it removes this entry or this check sees it
+		if (stamp(key.clazz, key.id) != stamp) {
+			discard(entry);
+		}
+		evict();
+	}
+
+	/**
+	 * Records that there is no row with the given id, if caching is enabled for the class.  The record expires
+	 * after the given time to live, or the class's own if that is shorter.
+	 */
+	public void putMissing(Class<?> clazz, Serializable id, long timeToLive, TimeUnit unit) {
+		putMissing(clazz, id, timeToLive, unit, stamp(clazz, id));
+	}
+
+	/**
+	 * As {@link #putMissing(Class, Serializable, long, TimeUnit)}, for a miss found after the given 
+	 * {@link #stamp(Class, Serializable) stamp} was taken - ignored if the entry has been invalidated since
+	 */
+	public void putMissing(Class<?> clazz, Serializable id, long timeToLive, TimeUnit unit, long stamp) {
+		Long ttl = this.timeToLive.get(clazz);
+		if (ttl == null || id == null || stamp(clazz, id) != stamp) {
+			return;
+		}
+		long nanos = unit.toNanos(timeToLive);
+		if (ttl != 0) {
+			nanos = Math.min(nanos, ttl);
+		}
+		Key key = new Key(clazz, id);
+		store(key, new Entry(key, null, 1, (System.nanoTime() + nanos) | 1), stamp);
+	}
+
+	/**
+	 * True if the id has been recorded as missing and the record has not expired
+	 */
+	public boolean isMissing(Class<?> clazz, Serializable id) {
+		if (id == null || !isEnabled(clazz)) {
+			return false;
+		}
+		Key key = new Key(clazz, id);
+		Entry entry = entries.get(key);
+		if (entry == null || entry.values != null) {
+			return false;
+		}
+		if (entry.isExpired(System.nanoTime())) {
+			discard(entry);
+			return false;
+		}
+		return true;
+	}
+
+	public void invalidate(Class<?> clazz, Serializable id) {
+		if (id == null) {
+			return;
+		}
+		generations.incrementAndGet(stripe(clazz, id));
+		Key key = new Key(clazz, id);
+		synchronized (lock) {
+			Entry previous = entries.remove(key);
+			if (previous != null) {
+				removeSlot(previous);
+				weight.addAndGet(-previous.weight);
+			}
+		}
+	}
+
+	public void invalidateAll(Class<?> clazz) {
+		clears.incrementAndGet();
+		synchronized (lock) {
+			for (int i = slotCount - 1; i >= 0; i--) {
+				Entry entry = slots[i];
+				if (entry.key.clazz == clazz) {
+					remove(entry);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		clears.incrementAndGet();
+		synchronized (lock) {
+			entries.clear();
+			slots = new Entry[16];
+			slotCount = 0;
+			weight.set(0);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Removes the entry if it is still the one in the map
+	 */
+	private void discard(Entry entry) {
+		synchronized (lock) {
+			if (entry.slot >= 0) {
+				remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry that is in the map, holding the lock
+	 */
+	private void remove(Entry entry) {
+		entries.remove(entry.key, entry);
+		removeSlot(entry);
+		weight.addAndGet(-entry.weight);
+	}
+
+	private void addSlot(Entry entry) {
+		if (slotCount == slots.length) {
+			slots = Arrays.copyOf(slots, slotCount * 2);
+		}
+		entry.slot = slotCount;
+		slots[slotCount++] = entry;
+	}
+
+	private void removeSlot(Entry entry) {
+		Entry last = slots[--slotCount];
+		slots[entry.slot] = last;
+		last.slot = entry.slot;
+		slots[slotCount] = null;
+		entry.slot = -1;
+	}
+
+	private void evict() {
+		if (weight.get() <= maximumWeight) {
+			return;
+		}
+		synchronized (lock) {
+			while (weight.get() > maximumWeight && slotCount > 0) {
+				remove(sample());
+			}
+		}
+	}
+
+	/**
+	 * Picks the least frequently read of a few entries chosen at random, preferring any that have expired.  
+	 * Called holding the lock.
+	 */
+	private Entry sample() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long now = System.nanoTime();
+		Entry victim = null;
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			Entry entry = slots[random.nextInt(slotCount)];
+			if (entry.isExpired(now)) {
+				return entry;
+			}
+			if (victim == null || entry.frequency < victim.frequency) {
+				if (victim != null) {
+					victim.frequency >>= 1;
+				}
+				victim = entry;
+			} else if (entry != victim) {
+				entry.frequency >>= 1;
+			}
+		}
+		return victim;
+	}
+
+	private static <T> T hydrate(Class<T> clazz, Object[] values) {
+		List<EntityProperty> columns = EntityDescriptor.of(clazz).getColumns();
+		try {
+			T t = clazz.newInstance();
+			for (int i = 0; i < values.length; i++) {
+				columns.get(i).set(t, EntityProperty.copyValue(values[i]));
+			}
+			return t;
+		} catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+			logger.error("Couldn't create " + clazz.getName() + " from the shared cache", e);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.Serializable;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Thrown when a versioned entity is written but its row no longer has the version the entity was read at - 
+ * another transaction has updated or deleted it since.
+ */
+public class StaleEntityException extends OptimisticLockingFailureException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Object entity;
+	private final Class<?> entityClass;
+	private final Serializable id;
+
+	public StaleEntityException(Object entity, Serializable id, Object version) {
+		super(entity.getClass().getName() + " " + id + " at version " + version + " was updated or deleted by another transaction");
+		this.entity = entity;
+		this.entityClass = entity.getClass();
+		this.id = id;
+	}
+
+	/**
+	 * The stale object that could not be written
+	 */
+	public Object getEntity() {
+		return entity;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public Serializable getId() {
+		return id;
+	}
+}
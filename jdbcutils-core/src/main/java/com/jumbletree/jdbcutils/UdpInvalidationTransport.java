@@ -0,0 +1,187 @@
+package com.jumbletree.jdbcutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends invalidation batches as UDP datagrams to a fixed list of peers, and receives them on a local port.
+ * Batches are split across datagrams to stay under a typical MTU.  Ids other than integers, longs, strings and
+ * UUIDs are sent as an invalidation of the whole class.
+ *
+ * UDP can drop packets, so caches kept coherent this way should still have a time to live.
+ */
+public class UdpInvalidationTransport implements InvalidationTransport {
+
+	private static final Logger logger = LoggerFactory.getLogger(UdpInvalidationTransport.class);
+
+	private static final int MAGIC = 0x4a55;
+	private static final int MAX_PACKET = 1400;
+
+	private static final byte NO_ID = 0;
+	private static final byte INT_ID = 'I';
+	private static final byte LONG_ID = 'L';
+	private static final byte STRING_ID = 'S';
+	private static final byte UUID_ID = 'U';
+
+	private final DatagramSocket socket;
+	private final List<InetSocketAddress> peers;
+	private Thread receiverThread;
+
+	/**
+	 * @param local the address to receive on, for example <code>new InetSocketAddress("127.0.0.1", 4560)</code>
+	 * @param peers the addresses of the other nodes
+	 */
+	public UdpInvalidationTransport(InetSocketAddress local, Collection<InetSocketAddress> peers) throws SocketException {
+		this.socket = new DatagramSocket(local);
+		this.peers = new ArrayList<>(peers);
+	}
+
+	/**
+	 * The address actually bound, which is useful when the local port was given as 0
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return (InetSocketAddress)socket.getLocalSocketAddress();
+	}
+
+	@Override
+	public void start(Consumer<List<InvalidationEvent>> receiver) {
+		receiverThread = new Thread(() -> {
+			byte[] buffer = new byte[65535];
+			while (!socket.isClosed()) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				try {
+					socket.receive(packet);
+				} catch (IOException e) {
+					if (!socket.isClosed()) {
+						logger.warn("Error receiving invalidation events", e);
+					}
+					continue;
+				}
+				try {
+					receiver.accept(decode(packet.getData(), packet.getLength()));
+				} catch (IOException e) {
+					logger.warn("Ignoring malformed invalidation packet from " + packet.getSocketAddress());
+				} catch (RuntimeException e) {
+					logger.error("Error applying invalidation events", e);
+				}
+			}
+		}, "jdbcutils-invalidation-udp");
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+	}
+
+	@Override
+	public void send(List<InvalidationEvent> events) {
+		try {
+			ByteArrayOutputStream packet = new ByteArrayOutputStream(MAX_PACKET);
+			int count = 0;
+			for (InvalidationEvent event : events) {
+				byte[] encoded = encode(event);
+				if (count > 0 && 4 + packet.size() + encoded.length > MAX_PACKET) {
+					sendPacket(packet.toByteArray(), count);
+					packet.reset();
+					count = 0;
+				}
+				packet.write(encoded);
+				count++;
+			}
+			if (count > 0) {
+				sendPacket(packet.toByteArray(), count);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't send invalidation events", e);
+		}
+	}
+
+	private void sendPacket(byte[] body, int count) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 4);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(MAGIC);
+		out.writeShort(count);
+		out.write(body);
+		byte[] data = bytes.toByteArray();
+		for (InetSocketAddress peer : peers) {
+			socket.send(new DatagramPacket(data, data.length, peer));
+		}
+	}
+
+	private static byte[] encode(InvalidationEvent event) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(event.getType());
+		Serializable id = event.getId();
+		if (id instanceof Integer) {
+			out.writeByte(INT_ID);
+			out.writeInt((Integer)id);
+		} else if (id instanceof Long) {
+			out.writeByte(LONG_ID);
+			out.writeLong((Long)id);
+		} else if (id instanceof String) {
+			out.writeByte(STRING_ID);
+			out.writeUTF((String)id);
+		} else if (id instanceof UUID) {
+			out.writeByte(UUID_ID);
+			out.writeLong(((UUID)id).getMostSignificantBits());
+			out.writeLong(((UUID)id).getLeastSignificantBits());
+		} else {
+			out.writeByte(NO_ID);
+		}
+		return bytes.toByteArray();
+	}
+
+	static List<InvalidationEvent> decode(byte[] data, int length) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+		if (in.readUnsignedShort() != MAGIC) {
+			throw new IOException("Not an invalidation packet");
+		}
+		int count = in.readUnsignedShort();
+		List<InvalidationEvent> events = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String type = in.readUTF();
+			Serializable id;
+			byte tag = in.readByte();
+			switch (tag) {
+			case NO_ID:
+				id = null;
+				break;
+			case INT_ID:
+				id = in.readInt();
+				break;
+			case LONG_ID:
+				id = in.readLong();
+				break;
+			case STRING_ID:
+				id = in.readUTF();
+				break;
+			case UUID_ID:
+				id = new UUID(in.readLong(), in.readLong());
+				break;
+			default:
+				throw new IOException("Unknown id type " + tag);
+			}
+			events.add(new InvalidationEvent(type, id));
+		}
+		return events;
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+	}
+}
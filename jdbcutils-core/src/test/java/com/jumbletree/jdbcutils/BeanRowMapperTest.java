@@ -0,0 +1,228 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class BeanRowMapperTest {
+
+	public enum Colour {
+		RED, GREEN
+	}
+
+	@Entity
+	@Table(name = "sample")
+	public static class Sample {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "big") private long big;
+		@Column(name = "ratio") private double ratio;
+		@Column(name = "scale") private float scale;
+		@Column(name = "flag") private boolean flag;
+		@Column(name = "label") private String label;
+		@Column(name = "count") private Integer count;
+		@Column(name = "total") private Long total;
+		@Column(name = "weight") private Double weight;
+		@Column(name = "enabled") private Boolean enabled;
+		@Column(name = "price") private BigDecimal price;
+		@Column(name = "colour") private Colour colour;
+		@Column(name = "created") private Date created;
+		@Column(name = "born") private java.sql.Date born;
+		@Column(name = "data") private byte[] data;
+		@Column(name = "token") private UUID token;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public long getBig() {
+			return big;
+		}
+		public void setBig(long big) {
+			this.big = big;
+		}
+		public double getRatio() {
+			return ratio;
+		}
+		public void setRatio(double ratio) {
+			this.ratio = ratio;
+		}
+		public float getScale() {
+			return scale;
+		}
+		public void setScale(float scale) {
+			this.scale = scale;
+		}
+		public boolean isFlag() {
+			return flag;
+		}
+		public void setFlag(boolean flag) {
+			this.flag = flag;
+		}
+		public String getLabel() {
+			return label;
+		}
+		public void setLabel(String label) {
+			this.label = label;
+		}
+		public Integer getCount() {
+			return count;
+		}
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+		public Long getTotal() {
+			return total;
+		}
+		public void setTotal(Long total) {
+			this.total = total;
+		}
+		public Double getWeight() {
+			return weight;
+		}
+		public void setWeight(Double weight) {
+			this.weight = weight;
+		}
+		public Boolean getEnabled() {
+			return enabled;
+		}
+		public void setEnabled(Boolean enabled) {
+			this.enabled = enabled;
+		}
+		public BigDecimal getPrice() {
+			return price;
+		}
+		public void setPrice(BigDecimal price) {
+			this.price = price;
+		}
+		public Colour getColour() {
+			return colour;
+		}
+		public void setColour(Colour colour) {
+			this.colour = colour;
+		}
+		public Date getCreated() {
+			return created;
+		}
+		public void setCreated(Date created) {
+			this.created = created;
+		}
+		public java.sql.Date getBorn() {
+			return born;
+		}
+		public void setBorn(java.sql.Date born) {
+			this.born = born;
+		}
+		public byte[] getData() {
+			return data;
+		}
+		public void setData(byte[] data) {
+			this.data = data;
+		}
+		public UUID getToken() {
+			return token;
+		}
+		public void setToken(UUID token) {
+			this.token = token;
+		}
+	}
+
+	private JdbcTemplate template;
+	private BeanRowMapper<Sample> mapper;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:mapper" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE sample (id INT PRIMARY KEY, big BIGINT, ratio DOUBLE, scale REAL, flag BOOLEAN, label VARCHAR(20), "
+				+ "count INT, total BIGINT, weight DOUBLE, enabled BOOLEAN, price DECIMAL(10,2), colour VARCHAR(10), created TIMESTAMP, "
+				+ "born DATE, data VARBINARY(10), token UUID)");
+		template.update("INSERT INTO sample VALUES (1, 5000000000, 0.5, 1.5, TRUE, 'one', 3, 4, 2.5, FALSE, 9.99, 'GREEN', "
+				+ "TIMESTAMP '2020-01-02 03:04:05', DATE '2000-06-07', X'0102', '123e4567-e89b-12d3-a456-426614174000')");
+		template.update("INSERT INTO sample (id) VALUES (2)");
+		mapper = new BeanRowMapper<>(Sample.class, new JDBCUtils(template));
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	@Test
+	public void mapsEveryType() {
+		Sample sample = template.queryForObject("SELECT * FROM sample WHERE id = 1", mapper);
+		assertEquals(1, sample.getId());
+		assertEquals(5000000000L, sample.getBig());
+		assertEquals(0.5, sample.getRatio(), 0);
+		assertEquals(1.5f, sample.getScale(), 0);
+		assertTrue(sample.isFlag());
+		assertEquals("one", sample.getLabel());
+		assertEquals(Integer.valueOf(3), sample.getCount());
+		assertEquals(Long.valueOf(4), sample.getTotal());
+		assertEquals(Double.valueOf(2.5), sample.getWeight());
+		assertEquals(Boolean.FALSE, sample.getEnabled());
+		assertEquals(new BigDecimal("9.99"), sample.getPrice());
+		assertEquals(Colour.GREEN, sample.getColour());
+		assertEquals(Timestamp.valueOf("2020-01-02 03:04:05"), sample.getCreated());
+		assertEquals(java.sql.Date.valueOf("2000-06-07"), sample.getBorn());
+		assertArrayEquals(new byte[] {1, 2}, sample.getData());
+		assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), sample.getToken());
+	}
+
+	@Test
+	public void mapsNulls() {
+		Sample sample = template.queryForObject("SELECT * FROM sample WHERE id = 2", mapper);
+		assertEquals(0L, sample.getBig());
+		assertFalse(sample.isFlag());
+		assertNull(sample.getLabel());
+		assertNull(sample.getCount());
+		assertNull(sample.getTotal());
+		assertNull(sample.getWeight());
+		assertNull(sample.getEnabled());
+		assertNull(sample.getPrice());
+		assertNull(sample.getColour());
+		assertNull(sample.getCreated());
+		assertNull(sample.getData());
+		assertNull(sample.getToken());
+	}
+
+	@Test
+	public void matchesLabelsIgnoringCaseAndOrder() {
+		Sample sample = template.queryForObject("SELECT LABEL AS \"LABEL\", 'x' AS extra, Id FROM sample WHERE id = 1", mapper);
+		assertEquals(1, sample.getId());
+		assertEquals("one", sample.getLabel());
+
+		//A different shape of result set through the same mapper
+		List<Sample> samples = template.query("SELECT count, id FROM sample ORDER BY id", mapper);
+		assertEquals(Integer.valueOf(3), samples.get(0).getCount());
+		assertEquals(2, samples.get(1).getId());
+		assertNull(samples.get(0).getLabel());
+	}
+
+	@Test
+	public void mapsPrefixedLabels() {
+		Sample sample = template.queryForObject("SELECT id, 'other' AS label, id AS s_id, label AS s_label FROM sample WHERE id = 1", mapper.withPrefix("s_"));
+		assertEquals(1, sample.getId());
+		assertEquals("one", sample.getLabel());
+	}
+}
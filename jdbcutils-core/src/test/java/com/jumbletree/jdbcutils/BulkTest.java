@@ -0,0 +1,117 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class BulkTest {
+
+	@Entity
+	@Table(name = "row_item")
+	public static class Row {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+	private Map<Operation, Integer> statements = new EnumMap<>(Operation.class);
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:bulk" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE row_item (id INT PRIMARY KEY, name VARCHAR(50))");
+		for (int id = 1; id <= 5; id++) {
+			template.update("INSERT INTO row_item (id, name) VALUES (?, 'before')", id);
+		}
+		utils = new JDBCUtils(template);
+		utils.setBatchSize(2);
+		utils.setListener(new JDBCUtilsListener() {
+			@Override
+			public void queryStarted(Class<?> entity, Operation operation) {
+				statements.merge(operation, 1, Integer::sum);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private List<Row> load(int ... ids) {
+		List<Row> rows = new ArrayList<>();
+		for (int id : ids) {
+			rows.add(utils.get(Row.class, id));
+		}
+		return rows;
+	}
+
+	private int remaining() {
+		return template.queryForObject("SELECT COUNT(*) FROM row_item", Integer.class);
+	}
+
+	@Test
+	public void updateAllCountsEachObject() {
+		List<Row> rows = load(1, 2, 3, 4, 5);
+		for (Row row : rows) {
+			row.setName("after");
+		}
+		Row gone = new Row();
+		gone.setId(99);
+		rows.add(gone);
+		assertArrayEquals(new int[] {1, 1, 1, 1, 1, 0}, utils.updateAll(rows));
+		assertEquals(Integer.valueOf(5), template.queryForObject("SELECT COUNT(*) FROM row_item WHERE name = 'after'", Integer.class));
+	}
+
+	@Test
+	public void deleteAllCountsRows() {
+		assertEquals(3, utils.deleteAll(load(1, 2, 3)));
+		assertEquals(2, remaining());
+		//One statement per chunk of two ids
+		assertEquals(Integer.valueOf(2), statements.get(Operation.DELETE));
+	}
+
+	@Test
+	public void deleteByIdsCountsRowsAndEvicts() {
+		Row first = load(1).get(0);
+		assertEquals(3, utils.deleteByIds(Row.class, Arrays.asList(1L, 2L, 3L, 42L)));
+		assertEquals(2, remaining());
+
+		template.update("INSERT INTO row_item (id, name) VALUES (1, 'again')");
+		Row again = utils.get(Row.class, 1);
+		assertNotSame(first, again);
+		assertEquals("again", again.getName());
+	}
+}
@@ -0,0 +1,136 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class DirtyTrackingTest {
+
+	@Entity
+	@Table(name = "profile")
+	public static class Profile {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+		@Column(name = "email") private String email;
+		@Version @Column(name = "version") private int version;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public String getEmail() {
+			return email;
+		}
+		public void setEmail(String email) {
+			this.email = email;
+		}
+		public int getVersion() {
+			return version;
+		}
+		public void setVersion(int version) {
+			this.version = version;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+	private Map<Operation, Integer> statements = new EnumMap<>(Operation.class);
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:dirty" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE profile (id INT PRIMARY KEY, name VARCHAR(50), email VARCHAR(50), version INT)");
+		template.update("INSERT INTO profile (id, name, email, version) VALUES (1, 'before', 'old@example.com', 0)");
+		utils = new JDBCUtils(template);
+		utils.setDirtyTracking(true);
+		utils.setListener(new JDBCUtilsListener() {
+			@Override
+			public void queryStarted(Class<?> entity, Operation operation) {
+				statements.merge(operation, 1, Integer::sum);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private String column(String column) {
+		return template.queryForObject("SELECT " + column + " FROM profile WHERE id = 1", String.class);
+	}
+
+	@Test
+	public void writesOnlyChangedColumns() {
+		Profile profile = utils.get(Profile.class, 1);
+		profile.setName("after");
+		//Changed by someone else since it was loaded
+		template.update("UPDATE profile SET email = 'new@example.com' WHERE id = 1");
+
+		utils.updateDirty(profile);
+		assertEquals("after", column("name"));
+		assertEquals("new@example.com", column("email"));
+		assertEquals(1, profile.getVersion());
+		assertEquals("1", column("version"));
+	}
+
+	@Test
+	public void writesNothingWhenUnchanged() {
+		Profile profile = utils.get(Profile.class, 1);
+		utils.updateDirty(profile);
+		assertNull(statements.get(Operation.UPDATE));
+		assertEquals(0, profile.getVersion());
+
+		//The snapshot moves on after a write, so a second call with no change is also free
+		profile.setName("after");
+		utils.updateDirty(profile);
+		utils.updateDirty(profile);
+		assertEquals(Integer.valueOf(1), statements.get(Operation.UPDATE));
+	}
+
+	@Test
+	public void fallsBackWithoutASnapshot() {
+		utils.setDirtyTracking(false);
+		Profile profile = utils.get(Profile.class, 1);
+		utils.setDirtyTracking(true);
+
+		//Compared with the row as it is now, so the object's values win
+		profile.setName("after");
+		template.update("UPDATE profile SET email = 'new@example.com' WHERE id = 1");
+		utils.updateDirty(profile);
+		assertEquals("after", column("name"));
+		assertEquals("old@example.com", column("email"));
+		assertEquals(1, profile.getVersion());
+	}
+
+	@Test(expected = StaleEntityException.class)
+	public void detectsConflicts() {
+		Profile profile = utils.get(Profile.class, 1);
+		template.update("UPDATE profile SET version = 5 WHERE id = 1");
+		profile.setName("after");
+		utils.updateDirty(profile);
+	}
+}
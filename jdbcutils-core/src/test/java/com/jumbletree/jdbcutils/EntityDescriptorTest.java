@@ -0,0 +1,228 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.junit.Test;
+
+public class EntityDescriptorTest {
+
+	public static class Audited {
+		@Column(name = "created_by") private String createdBy;
+
+		public String getCreatedBy() {
+			return createdBy;
+		}
+		public void setCreatedBy(String createdBy) {
+			this.createdBy = createdBy;
+		}
+	}
+
+	@Entity
+	@Table(name = "owner")
+	public static class Owner {
+		@Id @Column(name = "id") private int id;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+	}
+
+	@Entity
+	@Table(name = "item")
+	public static class Item extends Audited {
+		@Id @GeneratedValue @Column(name = "item_id") private long id;
+		@Column private String name;
+		@Column(name = "active") private boolean active;
+		@ManyToOne(targetEntity = Owner.class) @Column(name = "owner_id") private int ownerId;
+		@Version @Column(name = "version") private int version;
+		private String transientValue;
+
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+		public boolean isActive() {
+			return active;
+		}
+		public void setActive(boolean active) {
+			this.active = active;
+		}
+		public int getOwnerId() {
+			return ownerId;
+		}
+		public void setOwnerId(int ownerId) {
+			this.ownerId = ownerId;
+		}
+		public int getVersion() {
+			return version;
+		}
+		public void setVersion(int version) {
+			this.version = version;
+		}
+		public String getTransientValue() {
+			return transientValue;
+		}
+		public void setTransientValue(String transientValue) {
+			this.transientValue = transientValue;
+		}
+	}
+
+	@Entity(name = "named")
+	public static class Named {
+		@Id @Column(name = "id") private String id;
+
+		public String getId() {
+			return id;
+		}
+		public void setId(String id) {
+			this.id = id;
+		}
+	}
+
+	@Entity
+	@Table(name = "bad")
+	public static class BadVersion {
+		@Id @Column(name = "id") private int id;
+		@Version @Column(name = "version") private String version;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getVersion() {
+			return version;
+		}
+		public void setVersion(String version) {
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Not public, so accessors can't be linked and fall back to reflection
+	 */
+	@Entity
+	@Table(name = "hidden")
+	static class Hidden {
+		@Id @Column(name = "id") private int id;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+	}
+
+	private static List<String> columns(List<EntityProperty> properties) {
+		List<String> names = new ArrayList<>();
+		for (EntityProperty property : properties) {
+			names.add(property.getColumn());
+		}
+		return names;
+	}
+
+	@Test
+	public void describesTheClassOnce() {
+		assertSame(EntityDescriptor.of(Item.class), EntityDescriptor.of(Item.class));
+	}
+
+	@Test
+	public void readsTablesAndColumns() {
+		EntityDescriptor<Item> descriptor = EntityDescriptor.of(Item.class);
+		assertSame(Item.class, descriptor.getType());
+		assertEquals("item", descriptor.getTable());
+		assertEquals("item_id", descriptor.getIdColumn());
+		assertTrue(descriptor.isGeneratedId());
+		assertEquals("version", descriptor.getVersionProperty().getColumn());
+		assertNull(descriptor.getShardKeyProperty());
+
+		//Declared fields first, then the superclass's; a Column without a name uses the field name
+		List<String> all = columns(descriptor.getColumns());
+		assertEquals(Arrays.asList("item_id", "name", "active", "owner_id", "version", "created_by"), all);
+		assertFalse(columns(descriptor.getUpdateColumns()).contains("item_id"));
+		assertTrue(columns(descriptor.getUpdateColumns()).contains("created_by"));
+		//The id is generated, so isn't inserted
+		assertFalse(columns(descriptor.getInsertColumns()).contains("item_id"));
+		assertNull(descriptor.getProperty("transientValue"));
+	}
+
+	@Test
+	public void readsRelationships() {
+		EntityDescriptor<Item> descriptor = EntityDescriptor.of(Item.class);
+		EntityProperty owner = descriptor.getManyToOne(Owner.class);
+		assertEquals("owner_id", owner.getColumn());
+		assertSame(Owner.class, owner.getManyToOneTarget());
+		assertSame(owner, descriptor.getProperty("ownerId"));
+		assertEquals(1, descriptor.getManyToOnes().size());
+		assertNull(descriptor.getManyToOne(Named.class));
+	}
+
+	@Test
+	public void fallsBackToTheEntityName() {
+		assertEquals("named", EntityDescriptor.of(Named.class).getTable());
+		assertFalse(EntityDescriptor.of(Named.class).isGeneratedId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonNumericVersions() {
+		EntityDescriptor.of(BadVersion.class);
+	}
+
+	@Test
+	public void accessorsReadAndWriteProperties() throws Exception {
+		EntityDescriptor<Item> descriptor = EntityDescriptor.of(Item.class);
+		Item item = new Item();
+		descriptor.getProperty("name").set(item, "widget");
+		descriptor.getProperty("active").set(item, true);
+		descriptor.getProperty("createdBy").set(item, "me");
+		descriptor.getIdProperty().set(item, 7L);
+		assertEquals("widget", item.getName());
+		assertTrue(item.isActive());
+		assertEquals("me", descriptor.getProperty("createdBy").get(item));
+		assertEquals(7L, descriptor.getId(item));
+
+		PropertyAccessors.IntSetter setter = PropertyAccessors.intSetter(descriptor.getProperty("ownerId").getSetter());
+		setter.set(item, 3);
+		assertEquals(3, item.getOwnerId());
+	}
+
+	@Test
+	public void accessorsWorkForNonPublicClasses() throws Exception {
+		EntityDescriptor<Hidden> descriptor = EntityDescriptor.of(Hidden.class);
+		Hidden hidden = new Hidden();
+		descriptor.getIdProperty().set(hidden, 5);
+		assertEquals(5, hidden.getId());
+		assertEquals(5, descriptor.getId(hidden));
+		PropertyAccessors.intSetter(descriptor.getIdProperty().getSetter()).set(hidden, 6);
+		assertEquals(6, hidden.getId());
+	}
+}
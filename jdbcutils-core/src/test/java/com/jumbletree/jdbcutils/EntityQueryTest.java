@@ -0,0 +1,136 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class EntityQueryTest {
+
+	@Entity
+	@Table(name = "customer")
+	public static class Customer {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity
+	@Table(name = "purchase")
+	public static class Purchase {
+		@Id @Column(name = "id") private int id;
+		@ManyToOne(targetEntity = Customer.class) @Column(name = "customer_id") private Integer customerId;
+		@Column(name = "amount") private int amount;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public Integer getCustomerId() {
+			return customerId;
+		}
+		public void setCustomerId(Integer customerId) {
+			this.customerId = customerId;
+		}
+		public int getAmount() {
+			return amount;
+		}
+		public void setAmount(int amount) {
+			this.amount = amount;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:query" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE customer (id INT PRIMARY KEY, name VARCHAR(50))");
+		template.execute("CREATE TABLE purchase (id INT PRIMARY KEY, customer_id INT, amount INT)");
+		template.update("INSERT INTO customer VALUES (1, 'ann'), (2, 'bob')");
+		template.update("INSERT INTO purchase VALUES (1, 1, 10), (2, 1, 20), (3, 2, 30), (4, NULL, 40)");
+		utils = new JDBCUtils(template);
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	@Test
+	public void fetchLoadsTargetsIntoTheCache() {
+		List<Purchase> purchases = utils.query(Purchase.class).fetch(Customer.class).list();
+		assertEquals(4, purchases.size());
+		assertEquals("ann", ObjectCache.get().get(Customer.class, 1).getName());
+		assertEquals("bob", ObjectCache.get().get(Customer.class, 2).getName());
+		//Only the targets are cached by default
+		assertNull(ObjectCache.get().get(Purchase.class, 1));
+	}
+
+	@Test
+	public void constraintsApplyWithFetches() {
+		Customer ann = utils.get(Customer.class, 1);
+		List<Purchase> purchases = utils.query(Purchase.class).constrainedBy(ann).fetch(Customer.class).cache(true).list();
+		assertEquals(2, purchases.size());
+		assertNotNull(ObjectCache.get().get(Purchase.class, 1));
+	}
+
+	@Test
+	public void fetchIsLeftOutWithoutCaching() {
+		EntityQuery<Purchase> query = utils.query(Purchase.class).fetch(Customer.class).cache(false);
+		assertFalse(query.getSql(), query.getSql().contains("JOIN"));
+		List<Purchase> purchases = query.list();
+		assertEquals(4, purchases.size());
+		assertEquals(Integer.valueOf(1), purchases.get(0).getCustomerId());
+		assertNull(ObjectCache.get().get(Customer.class, 1));
+		assertNull(ObjectCache.get().get(Purchase.class, 1));
+	}
+
+	@Test
+	public void streamsWithoutCaching() {
+		try (Stream<Purchase> stream = utils.query(Purchase.class).fetch(Customer.class).cache(false).fetchSize(2).stream()) {
+			List<Integer> amounts = stream.map(Purchase::getAmount).sorted().collect(Collectors.toList());
+			assertEquals(4, amounts.size());
+			assertEquals(Integer.valueOf(40), amounts.get(3));
+		}
+		assertNull(ObjectCache.get().get(Customer.class, 1));
+	}
+
+	@Test
+	public void joinedQueriesStillSelectAliasedColumns() {
+		assertTrue(utils.query(Purchase.class).fetch(Customer.class).getSql().contains("LEFT JOIN customer f0"));
+	}
+}
@@ -0,0 +1,130 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class FindTest {
+
+	@Entity
+	@Table(name = "widget")
+	public static class Widget {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+	private Map<Operation, Integer> statements = new EnumMap<>(Operation.class);
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:find" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE widget (id INT PRIMARY KEY, name VARCHAR(50))");
+		template.update("INSERT INTO widget (id, name) VALUES (1, 'one')");
+		utils = new JDBCUtils(template);
+		utils.setListener(new JDBCUtilsListener() {
+			@Override
+			public void queryStarted(Class<?> entity, Operation operation) {
+				statements.merge(operation, 1, Integer::sum);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private static Widget widget(int id, String name) {
+		Widget widget = new Widget();
+		widget.setId(id);
+		widget.setName(name);
+		return widget;
+	}
+
+	@Test
+	public void findsExistingRows() {
+		assertEquals("one", utils.find(Widget.class, 1L).get().getName());
+	}
+
+	@Test
+	public void remembersMisses() throws InterruptedException {
+		utils.setMissingTimeToLive(200);
+		assertFalse(utils.find(Widget.class, 2).isPresent());
+		assertFalse(utils.find(Widget.class, 2L).isPresent());
+		assertEquals(Integer.valueOf(1), statements.get(Operation.FIND));
+
+		//Added behind its back, so not seen until the miss expires
+		template.update("INSERT INTO widget (id, name) VALUES (2, 'two')");
+		assertFalse(utils.find(Widget.class, 2).isPresent());
+		Thread.sleep(300);
+		assertTrue(utils.find(Widget.class, 2).isPresent());
+	}
+
+	@Test
+	public void insertClearsAMiss() {
+		assertFalse(utils.find(Widget.class, 2).isPresent());
+		utils.insert(widget(2, "two"));
+		assertEquals("two", utils.find(Widget.class, 2).get().getName());
+	}
+
+	@Test
+	public void zeroTimeToLiveDoesNotRemember() {
+		utils.setMissingTimeToLive(0);
+		assertFalse(utils.find(Widget.class, 2).isPresent());
+		template.update("INSERT INTO widget (id, name) VALUES (2, 'two')");
+		assertTrue(utils.find(Widget.class, 2).isPresent());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeTimeToLive() {
+		utils.setMissingTimeToLive(-1);
+	}
+
+	@Test
+	public void getManyMapsMissesToNull() {
+		Map<Serializable, Widget> widgets = utils.getMany(Widget.class, Arrays.asList(1L, 3L));
+		assertEquals(2, widgets.size());
+		assertEquals("one", widgets.get(1).getName());
+		assertTrue(widgets.containsKey(3));
+		assertNull(widgets.get(3));
+
+		//The miss is remembered for find too
+		int queries = statements.get(Operation.GET_MANY);
+		assertFalse(utils.find(Widget.class, 3).isPresent());
+		assertNull(statements.get(Operation.FIND));
+		assertEquals(queries, statements.get(Operation.GET_MANY).intValue());
+	}
+}
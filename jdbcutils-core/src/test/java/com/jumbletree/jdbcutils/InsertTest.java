@@ -0,0 +1,181 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class InsertTest {
+
+	@Entity
+	@Table(name = "int_item")
+	public static class IntItem {
+		@Id @GeneratedValue @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity
+	@Table(name = "long_item")
+	public static class LongItem {
+		@Id @GeneratedValue @Column(name = "id") private long id;
+		@Column(name = "name") private String name;
+
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity
+	@Table(name = "uuid_item")
+	public static class UuidItem {
+		@Id @GeneratedValue @Column(name = "id") private UUID id;
+		@Column(name = "name") private String name;
+
+		public UUID getId() {
+			return id;
+		}
+		public void setId(UUID id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:insert" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE int_item (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50))");
+		template.execute("CREATE TABLE long_item (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50))");
+		template.execute("CREATE TABLE uuid_item (id UUID DEFAULT RANDOM_UUID() PRIMARY KEY, name VARCHAR(50))");
+		utils = new JDBCUtils(template);
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	@Test
+	public void insertBackFillsIntIds() {
+		IntItem first = new IntItem();
+		first.setName("first");
+		utils.insert(first);
+		IntItem second = new IntItem();
+		second.setName("second");
+		utils.insert(second);
+		assertNotEquals(0, first.getId());
+		assertNotEquals(first.getId(), second.getId());
+		assertEquals("second", template.queryForObject("SELECT name FROM int_item WHERE id = ?", String.class, second.getId()));
+	}
+
+	@Test
+	public void insertBackFillsLongIds() {
+		template.execute("ALTER TABLE long_item ALTER COLUMN id RESTART WITH 5000000000");
+		LongItem item = new LongItem();
+		item.setName("big");
+		utils.insert(item);
+		assertEquals(5000000000L, item.getId());
+		ObjectCache.terminate();
+		assertEquals("big", utils.find(LongItem.class, 5000000000L).get().getName());
+	}
+
+	@Test
+	public void insertBackFillsUuidIds() {
+		UuidItem item = new UuidItem();
+		item.setName("uuid");
+		utils.insert(item);
+		assertNotNull(item.getId());
+		assertEquals("uuid", template.queryForObject("SELECT name FROM uuid_item WHERE id = ?", String.class, item.getId()));
+		ObjectCache.terminate();
+		assertEquals("uuid", utils.find(UuidItem.class, item.getId()).get().getName());
+	}
+
+	@Test
+	public void insertAllBackFillsEachIdType() {
+		utils.setBatchSize(2);
+		List<Object> items = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			IntItem intItem = new IntItem();
+			intItem.setName("i" + i);
+			LongItem longItem = new LongItem();
+			longItem.setName("l" + i);
+			UuidItem uuidItem = new UuidItem();
+			uuidItem.setName("u" + i);
+			items.add(intItem);
+			items.add(longItem);
+			items.add(uuidItem);
+		}
+		utils.insertAll(items);
+
+		Set<Object> ids = new HashSet<>();
+		for (Object o : items) {
+			Object id;
+			String name;
+			String table;
+			if (o instanceof IntItem) {
+				id = ((IntItem)o).getId();
+				name = ((IntItem)o).getName();
+				table = "int_item";
+			} else if (o instanceof LongItem) {
+				id = ((LongItem)o).getId();
+				name = ((LongItem)o).getName();
+				table = "long_item";
+			} else {
+				id = ((UuidItem)o).getId();
+				name = ((UuidItem)o).getName();
+				table = "uuid_item";
+			}
+			ids.add(table + id);
+			//Each object got its own row's key, in order
+			assertEquals(name, template.queryForObject("SELECT name FROM " + table + " WHERE id = ?", String.class, id));
+		}
+		assertEquals(items.size(), ids.size());
+	}
+}
@@ -0,0 +1,217 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class InvalidationBusTest {
+
+	@Entity
+	@Table(name = "widget")
+	public static class Widget {
+		@Id @GeneratedValue @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	private JdbcTemplate template;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:bus" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE widget (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50))");
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private static JDBCUtils node(JdbcTemplate template, InvalidationTransport transport) {
+		SharedCache cache = new SharedCache(100);
+		cache.enable(Widget.class);
+		JDBCUtils utils = new JDBCUtils(template);
+		utils.setSharedCache(cache);
+		utils.setInvalidationBus(new InvalidationBus(transport, cache, 1, TimeUnit.MILLISECONDS, 16));
+		return utils;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() - deadline > 0) {
+				fail("Timed out");
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	private void assertInvalidatesOtherNode(JDBCUtils writer, JDBCUtils reader) throws Exception {
+		Widget widget = new Widget();
+		widget.setName("before");
+		writer.insert(widget);
+		ObjectCache.terminate();
+
+		//The insert's own invalidation may still be on its way, so load until the entry sticks
+		await(() -> {
+			ObjectCache.terminate();
+			assertEquals("before", reader.get(Widget.class, widget.getId()).getName());
+			return reader.getSharedCache().get(Widget.class, widget.getId()) != null;
+		});
+
+		widget.setName("after");
+		writer.update(widget);
+		await(() -> reader.getSharedCache().get(Widget.class, widget.getId()) == null);
+		ObjectCache.terminate();
+		assertEquals("after", reader.get(Widget.class, widget.getId()).getName());
+	}
+
+	@Test
+	public void invalidatesOverLocalTransport() throws Exception {
+		LocalInvalidationTransport first = new LocalInvalidationTransport();
+		JDBCUtils writer = node(template, first);
+		JDBCUtils reader = node(template, first.join());
+		try {
+			assertInvalidatesOtherNode(writer, reader);
+		} finally {
+			writer.getInvalidationBus().close();
+			reader.getInvalidationBus().close();
+		}
+	}
+
+	@Test
+	public void invalidatesOverUdpLoopback() throws Exception {
+		UdpInvalidationTransport readerTransport = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1", 0), Collections.emptyList());
+		UdpInvalidationTransport writerTransport = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1", 0),
+				Collections.singletonList(readerTransport.getLocalAddress()));
+		JDBCUtils reader = node(template, readerTransport);
+		JDBCUtils writer = node(template, writerTransport);
+		try {
+			assertInvalidatesOtherNode(writer, reader);
+		} finally {
+			writer.getInvalidationBus().close();
+			reader.getInvalidationBus().close();
+		}
+	}
+
+	@Test
+	public void publishAfterCloseIsIgnored() {
+		List<List<InvalidationEvent>> sent = new java.util.concurrent.CopyOnWriteArrayList<>();
+		InvalidationTransport transport = new LocalInvalidationTransport() {
+			@Override
+			public void send(List<InvalidationEvent> events) {
+				sent.add(events);
+			}
+		};
+		InvalidationBus bus = new InvalidationBus(transport, null, 1, TimeUnit.HOURS, 2);
+		bus.close();
+		for (int i = 0; i < 10; i++) {
+			bus.publish(Widget.class, i);
+		}
+		bus.flush();
+		assertEquals(0, sent.size());
+	}
+
+	@Test
+	public void receivedWholeClassEventsClearTheClass() {
+		SharedCache cache = new SharedCache(100);
+		cache.enable(Widget.class);
+		Widget widget = new Widget();
+		widget.setId(1);
+		cache.put(Widget.class, 1, widget);
+		LocalInvalidationTransport first = new LocalInvalidationTransport();
+		try (InvalidationBus bus = new InvalidationBus(first.join(), cache)) {
+			first.send(Collections.singletonList(new InvalidationEvent(Widget.class.getName(), null)));
+			assertNull(cache.get(Widget.class, 1));
+		}
+	}
+
+	/**
+	 * Loads its own copy of one class, as a web app's loader would its entities
+	 */
+	private static class ChildLoader extends ClassLoader {
+		private final String name;
+
+		ChildLoader(String name) {
+			super(InvalidationBusTest.class.getClassLoader());
+			this.name = name;
+		}
+
+		@Override
+		protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+			if (!className.equals(name)) {
+				return super.loadClass(className, resolve);
+			}
+			synchronized (getClassLoadingLock(className)) {
+				Class<?> loaded = findLoadedClass(className);
+				if (loaded != null) {
+					return loaded;
+				}
+				try (InputStream in = getParent().getResourceAsStream(className.replace('.', '/') + ".class")) {
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					byte[] buffer = new byte[4096];
+					for (int n; (n = in.read(buffer)) > 0; ) {
+						out.write(buffer, 0, n);
+					}
+					byte[] bytes = out.toByteArray();
+					return defineClass(className, bytes, 0, bytes.length);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(className, e);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void resolvesClassesFromOtherLoaders() throws Exception {
+		Class<?> child = new ChildLoader(Widget.class.getName()).loadClass(Widget.class.getName());
+		assertNotSame(Widget.class, child);
+		SharedCache cache = new SharedCache(100);
+		cache.enable(child);
+		Object widget = child.getConstructor().newInstance();
+		cache.put(child, 1, widget);
+		assertNotNull(cache.get(child, 1));
+
+		LocalInvalidationTransport first = new LocalInvalidationTransport();
+		try (InvalidationBus bus = new InvalidationBus(first.join(), cache)) {
+			first.send(Collections.singletonList(new InvalidationEvent(Widget.class.getName(), 1)));
+			assertNull(cache.get(child, 1));
+		}
+	}
+}
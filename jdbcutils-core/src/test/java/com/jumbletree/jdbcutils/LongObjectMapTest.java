@@ -0,0 +1,144 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongObjectMapTest {
+
+	private static final int MASK = 15;
+
+	/**
+	 * The first count keys from start up whose home slot in a new map is the given one
+	 */
+	private static List<Long> keysFor(int slot, int count) {
+		List<Long> keys = new ArrayList<>();
+		for (long key = 0; keys.size() < count; key++) {
+			if ((LongObjectMap.hash(key) & MASK) == slot) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	@Test
+	public void collidingKeysAreAllFound() {
+		LongObjectMap map = new LongObjectMap();
+		List<Long> keys = keysFor(3, 5);
+		for (long key : keys) {
+			assertNull(map.put(key, "v" + key));
+		}
+		assertEquals(5, map.size());
+		for (long key : keys) {
+			assertEquals("v" + key, map.get(key));
+		}
+		assertEquals("v" + keys.get(2), map.put(keys.get(2), "again"));
+		assertEquals("again", map.get(keys.get(2)));
+		assertEquals(5, map.size());
+	}
+
+	@Test
+	public void probesWrapAroundTheEnd() {
+		LongObjectMap map = new LongObjectMap();
+		List<Long> keys = keysFor(MASK, 4);
+		for (long key : keys) {
+			map.put(key, key);
+		}
+		for (long key : keys) {
+			assertEquals(key, map.get(key));
+		}
+		//Removing the one in the last slot has to pull the wrapped ones back across the end
+		map.remove(keys.get(0));
+		assertNull(map.get(keys.get(0)));
+		for (long key : keys.subList(1, keys.size())) {
+			assertEquals(key, map.get(key));
+		}
+	}
+
+	@Test
+	public void removeShiftsLaterEntriesBack() {
+		LongObjectMap map = new LongObjectMap();
+		List<Long> sameSlot = keysFor(5, 3);
+		long next = keysFor(6, 1).get(0);
+		for (long key : sameSlot) {
+			map.put(key, key);
+		}
+		//Displaced from slot 6 to slot 8 by the chain from slot 5
+		map.put(next, next);
+
+		assertEquals(sameSlot.get(0), map.remove(sameSlot.get(0)));
+		assertNull(map.remove(sameSlot.get(0)));
+		assertNull(map.get(sameSlot.get(0)));
+		assertEquals(sameSlot.get(1), map.get(sameSlot.get(1)));
+		assertEquals(sameSlot.get(2), map.get(sameSlot.get(2)));
+		assertEquals(next, map.get(next));
+
+		assertEquals(sameSlot.get(1), map.remove(sameSlot.get(1)));
+		assertEquals(sameSlot.get(2), map.get(sameSlot.get(2)));
+		assertEquals(next, map.get(next));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void growsAndShrinks() {
+		LongObjectMap map = new LongObjectMap();
+		for (long key = 0; key < 10_000; key++) {
+			map.put(key * 31, key);
+		}
+		assertEquals(10_000, map.size());
+		for (long key = 0; key < 10_000; key++) {
+			assertEquals(key, map.get(key * 31));
+		}
+		map.removeIf(value -> (Long)value % 100 != 0);
+		assertEquals(100, map.size());
+		for (long key = 0; key < 10_000; key++) {
+			assertEquals(key % 100 == 0 ? (Object)key : null, map.get(key * 31));
+		}
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(0));
+	}
+
+	@Test
+	public void keysDifferingOnlyInTheHighBitsAreDistinct() {
+		LongObjectMap map = new LongObjectMap();
+		long[] keys = { 1L, 1L + (1L << 32), 1L - (1L << 32), -1L, 0xffffffffL, Long.MIN_VALUE, Long.MAX_VALUE, 0 };
+		for (long key : keys) {
+			map.put(key, key);
+		}
+		assertEquals(keys.length, map.size());
+		for (long key : keys) {
+			assertEquals(key, map.get(key));
+		}
+		map.remove(1L);
+		assertNull(map.get(1L));
+		assertEquals(1L + (1L << 32), map.get(1L + (1L << 32)));
+	}
+
+	@Test
+	public void matchesHashMapUnderRandomUse() {
+		LongObjectMap map = new LongObjectMap();
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			//A small key range so removes and overwrites are common
+			long key = random.nextInt(2_000) - 1_000L;
+			if (random.nextBoolean()) {
+				assertEquals(expected.put(key, key), map.put(key, key));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = -1_000; key < 1_000; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+	}
+}
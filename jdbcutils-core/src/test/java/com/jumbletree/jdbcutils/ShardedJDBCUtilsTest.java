@@ -0,0 +1,251 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class ShardedJDBCUtilsTest {
+
+	@Entity
+	@Table(name = "tenant")
+	public static class Tenant {
+		@Id @ShardKey @Column(name = "id") private int id;
+		@Column(name = "name") private String name;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity
+	@Table(name = "orders")
+	public static class Order {
+		@Id @Column(name = "id") private long id;
+		@ShardKey @ManyToOne(targetEntity = Tenant.class) @Column(name = "tenant_id") private int tenantId;
+		@Column(name = "amount") private int amount;
+
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public int getTenantId() {
+			return tenantId;
+		}
+		public void setTenantId(int tenantId) {
+			this.tenantId = tenantId;
+		}
+		public int getAmount() {
+			return amount;
+		}
+		public void setAmount(int amount) {
+			this.amount = amount;
+		}
+	}
+
+	@Entity
+	@Table(name = "setting")
+	public static class Setting {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "setting_value") private String value;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getValue() {
+			return value;
+		}
+		public void setValue(String value) {
+			this.value = value;
+		}
+	}
+
+	@Entity
+	@Table(name = "tenant")
+	public static class GeneratedTenant {
+		@Id @ShardKey @GeneratedValue @Column(name = "id") private int id;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+	}
+
+	@Entity
+	@Table(name = "audit")
+	public static class Audit {
+		@Id @Column(name = "id") private int id;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+	}
+
+	private static final int SHARDS = 3;
+	private static final int TENANTS = 12;
+
+	private JdbcTemplate[] templates;
+	private ShardedJDBCUtils utils;
+
+	@Before
+	public void setUp() {
+		templates = new JdbcTemplate[SHARDS];
+		long unique = System.nanoTime();
+		for (int i = 0; i < SHARDS; i++) {
+			templates[i] = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:shard" + unique + "_" + i + ";DB_CLOSE_DELAY=-1", "sa", ""));
+			templates[i].execute("CREATE TABLE tenant (id INT PRIMARY KEY, name VARCHAR(50))");
+			templates[i].execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, tenant_id INT, amount INT)");
+		}
+		//Unsharded classes live on the first shard only
+		templates[0].execute("CREATE TABLE setting (id INT PRIMARY KEY, setting_value VARCHAR(50))");
+		utils = new ShardedJDBCUtils(templates);
+
+		long orderId = 1;
+		List<Object> orders = new ArrayList<>();
+		for (int i = 1; i <= TENANTS; i++) {
+			Tenant tenant = new Tenant();
+			tenant.setId(i);
+			tenant.setName("tenant" + i);
+			utils.insert(tenant);
+			for (int k = 0; k < 2; k++) {
+				Order order = new Order();
+				order.setId(orderId++);
+				order.setTenantId(i);
+				order.setAmount(k);
+				orders.add(order);
+			}
+		}
+		utils.insertAll(orders);
+		ObjectCache.terminate();
+	}
+
+	@After
+	public void tearDown() {
+		utils.close();
+		for (JdbcTemplate template : templates) {
+			template.execute("SHUTDOWN");
+		}
+		ObjectCache.terminate();
+	}
+
+	private int count(int shard, String sql) {
+		return templates[shard].queryForObject(sql, Integer.class);
+	}
+
+	@Test
+	public void routesByShardKey() {
+		Set<Integer> used = new HashSet<>();
+		int total = 0;
+		for (int i = 0; i < SHARDS; i++) {
+			int tenants = count(i, "SELECT COUNT(*) FROM tenant");
+			if (tenants > 0) {
+				used.add(i);
+			}
+			total += tenants;
+			//Orders land with their tenant
+			assertEquals(0, count(i, "SELECT COUNT(*) FROM orders o WHERE NOT EXISTS (SELECT 1 FROM tenant t WHERE t.id = o.tenant_id)"));
+		}
+		assertEquals(TENANTS, total);
+		assertTrue("Only used shards " + used, used.size() > 1);
+
+		for (int i = 1; i <= TENANTS; i++) {
+			int shard = utils.shardIndex(i);
+			assertEquals(1, count(shard, "SELECT COUNT(*) FROM tenant WHERE id = " + i));
+			assertSame(utils.getShard(shard), utils.getShardFor(i));
+		}
+		//An int and a long with the same value go to the same shard
+		assertEquals(utils.shardIndex(7), utils.shardIndex(7L));
+	}
+
+	@Test
+	public void routedReadsAndWrites() {
+		Tenant tenant = utils.get(Tenant.class, 5);
+		assertEquals("tenant5", tenant.getName());
+		assertEquals(2, utils.queryFor(Order.class, tenant).size());
+		assertEquals(2, utils.getOneToMany(tenant, Order.class).size());
+
+		Order order = utils.queryFor(Order.class, tenant).get(0);
+		order.setAmount(77);
+		utils.update(order);
+		assertEquals(1, count(utils.shardIndex(5), "SELECT COUNT(*) FROM orders WHERE amount = 77"));
+
+		utils.delete(tenant);
+		ObjectCache.terminate();
+		assertFalse(utils.find(Tenant.class, 5).isPresent());
+	}
+
+	@Test
+	public void scatterGathers() {
+		assertEquals(TENANTS, utils.getAll(Tenant.class).size());
+		assertEquals(TENANTS * 2, utils.getAll(Order.class).size());
+
+		//Orders aren't sharded by id, so these ask every shard
+		assertEquals(7L, utils.find(Order.class, 7L).get().getId());
+		assertEquals(8L, utils.get(Order.class, 8).getId());
+		assertFalse(utils.find(Order.class, 999L).isPresent());
+		//A miss on one shard mustn't hide the row on another
+		assertTrue(utils.find(Order.class, 9L).isPresent());
+	}
+
+	@Test
+	public void unshardedClassesUseTheFirstShard() {
+		Setting setting = new Setting();
+		setting.setId(1);
+		setting.setValue("on");
+		utils.insert(setting);
+		assertEquals(1, count(0, "SELECT COUNT(*) FROM setting"));
+		assertSame(utils.getShard(0), utils.getShardOf(setting));
+		ObjectCache.terminate();
+		assertEquals(1, utils.getAll(Setting.class).size());
+		assertEquals("on", utils.get(Setting.class, 1).getValue());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsGeneratedIdsAsShardKeys() {
+		utils.insert(new GeneratedTenant());
+	}
+
+	@Test(expected = DataAccessException.class)
+	public void unshardedClassesOnlyLookAtTheFirstShard() {
+		templates[1].execute("CREATE TABLE audit (id INT PRIMARY KEY)");
+		utils.getAll(Audit.class);
+	}
+}
@@ -0,0 +1,225 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class SharedCacheTest {
+
+	@Entity
+	@Table(name = "account")
+	public static class Account {
+		@Id @Column(name = "id") private long id;
+		@Column(name = "name") private String name;
+
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Entity
+	@Table(name = "account")
+	public static class ReadOnlyAccount {
+		@Id @Column(name = "id") private long id;
+		@Column(name = "name") private String name;
+
+		public long getId() {
+			return id;
+		}
+		public void setId(long id) {
+			this.id = id;
+		}
+		public String getName() {
+			return name;
+		}
+	}
+
+	private JdbcTemplate template;
+	private SharedCache cache;
+	private JDBCUtils utils;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:shared" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE account (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+		template.update("INSERT INTO account (id, name) VALUES (1, 'before')");
+		cache = new SharedCache(100);
+		cache.enable(Account.class);
+		utils = new JDBCUtils(template);
+		utils.setSharedCache(cache);
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private static Account account(long id, String name) {
+		Account account = new Account();
+		account.setId(id);
+		account.setName(name);
+		return account;
+	}
+
+	@Test
+	public void intAndLongIdsAreTheSameEntry() {
+		cache.put(Account.class, 1, account(1, "a"));
+		assertEquals("a", cache.get(Account.class, 1L).getName());
+		assertEquals(cache.stamp(Account.class, -1), cache.stamp(Account.class, -1L));
+		cache.invalidate(Account.class, 1L);
+		assertNull(cache.get(Account.class, 1));
+	}
+
+	@Test
+	public void updateInvalidatesAnEntryLoadedByIntId() {
+		assertEquals("before", utils.get(Account.class, 1).getName());
+		assertNotNull(cache.get(Account.class, 1L));
+
+		ObjectCache.terminate();
+		Account account = utils.get(Account.class, 1);
+		account.setName("after");
+		utils.update(account);
+
+		ObjectCache.terminate();
+		assertEquals("after", utils.get(Account.class, 1).getName());
+	}
+
+	@Test
+	public void deleteInvalidatesAnEntryLoadedByIntId() {
+		utils.get(Account.class, 1);
+		ObjectCache.terminate();
+		utils.delete(utils.get(Account.class, 1));
+		ObjectCache.terminate();
+		assertNull(cache.get(Account.class, 1));
+		assertEquals(false, utils.find(Account.class, 1).isPresent());
+	}
+
+	@Test
+	public void bulkWritesInvalidate() {
+		template.update("INSERT INTO account (id, name) VALUES (2, 'before')");
+		template.update("INSERT INTO account (id, name) VALUES (3, 'before')");
+		Account one = utils.get(Account.class, 1);
+		utils.get(Account.class, 2);
+		utils.get(Account.class, 3);
+		assertNotNull(cache.get(Account.class, 3L));
+
+		one.setName("after");
+		utils.updateAll(Arrays.asList(one));
+		assertNull(cache.get(Account.class, 1L));
+
+		utils.deleteAll(Arrays.asList(utils.get(Account.class, 2)));
+		assertNull(cache.get(Account.class, 2L));
+
+		utils.deleteByIds(Account.class, Arrays.asList(3));
+		assertNull(cache.get(Account.class, 3L));
+
+		ObjectCache.terminate();
+		assertEquals("after", utils.get(Account.class, 1).getName());
+		assertEquals(false, utils.find(Account.class, 2).isPresent());
+		assertEquals(false, utils.find(Account.class, 3).isPresent());
+	}
+
+	@Test
+	public void insertClearsARecordedMiss() {
+		assertEquals(false, utils.find(Account.class, 5).isPresent());
+		assertTrue(cache.isMissing(Account.class, 5L));
+
+		utils.insert(account(5, "new"));
+		ObjectCache.terminate();
+		assertEquals(false, cache.isMissing(Account.class, 5L));
+		assertEquals("new", utils.find(Account.class, 5).get().getName());
+	}
+
+	@Test
+	public void updateDirtyInvalidates() {
+		utils.setDirtyTracking(true);
+		Account account = utils.get(Account.class, 1);
+		assertNotNull(cache.get(Account.class, 1L));
+		account.setName("after");
+		utils.updateDirty(account);
+		assertNull(cache.get(Account.class, 1L));
+
+		ObjectCache.terminate();
+		assertEquals("after", utils.get(Account.class, 1).getName());
+	}
+
+	@Test
+	public void returnsCopies() {
+		utils.get(Account.class, 1);
+		Account first = cache.get(Account.class, 1L);
+		first.setName("changed");
+		assertEquals("before", cache.get(Account.class, 1L).getName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesClassesThatCantBeRebuilt() {
+		cache.enable(ReadOnlyAccount.class);
+	}
+
+	@Test
+	public void evictionReachesTheWholeTable() {
+		SharedCache small = new SharedCache(1000);
+		small.enable(Account.class);
+		for (long id = 0; id < 1000; id++) {
+			small.put(Account.class, id, account(id, "old"));
+		}
+		for (long id = 1000; id < 4000; id++) {
+			small.put(Account.class, id, account(id, "new"));
+		}
+		assertEquals(1000, small.size());
+		int survivors = 0;
+		for (long id = 0; id < 1000; id++) {
+			if (small.get(Account.class, id) != null) {
+				survivors++;
+			}
+		}
+		//Evicting evenly leaves about 5% of the first thousand; only ever looking at one end leaves most of them
+		assertTrue("Survivors " + survivors, survivors < 300);
+	}
+
+	@Test
+	public void evictionKeepsFrequentlyReadEntries() {
+		SharedCache small = new SharedCache(1000);
+		small.enable(Account.class);
+		for (long id = 0; id < 1000; id++) {
+			small.put(Account.class, id, account(id, "old"));
+		}
+		for (long id = 1000; id < 3000; id++) {
+			for (long hot = 0; hot < 1000; hot += 20) {
+				small.get(Account.class, hot);
+			}
+			small.put(Account.class, id, account(id, "new"));
+		}
+		int hot = 0;
+		for (long id = 0; id < 1000; id += 20) {
+			if (small.get(Account.class, id) != null) {
+				hot++;
+			}
+		}
+		assertTrue("Hot survivors " + hot, hot >= 45);
+	}
+}
@@ -0,0 +1,85 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UdpInvalidationTransportTest {
+
+	private UdpInvalidationTransport receiver;
+	private UdpInvalidationTransport sender;
+	private final List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void setUp() throws Exception {
+		receiver = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1", 0), Collections.emptyList());
+		receiver.start(received::addAll);
+		sender = new UdpInvalidationTransport(new InetSocketAddress("127.0.0.1", 0), Collections.singletonList(receiver.getLocalAddress()));
+	}
+
+	@After
+	public void tearDown() {
+		sender.close();
+		receiver.close();
+	}
+
+	private void awaitReceived(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (received.size() < count) {
+			if (System.nanoTime() - deadline > 0) {
+				fail("Received " + received.size() + " of " + count + " events");
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void roundTripsEachIdType() throws Exception {
+		List<InvalidationEvent> events = Arrays.asList(
+				new InvalidationEvent("a.Int", 42),
+				new InvalidationEvent("a.Long", 1L << 40),
+				new InvalidationEvent("a.String", "kéy"),
+				new InvalidationEvent("a.Uuid", UUID.randomUUID()),
+				new InvalidationEvent("a.All", null));
+		sender.send(events);
+		awaitReceived(events.size());
+		assertEquals(events, received);
+	}
+
+	@Test
+	public void unsupportedIdsInvalidateTheClass() throws Exception {
+		sender.send(Collections.singletonList(new InvalidationEvent("a.Date", new java.util.Date())));
+		awaitReceived(1);
+		assertEquals(new InvalidationEvent("a.Date", null), received.get(0));
+	}
+
+	@Test
+	public void splitsLargeBatchesAcrossPackets() throws Exception {
+		List<InvalidationEvent> events = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			events.add(new InvalidationEvent("com.example.SomeLongishEntityName", i));
+		}
+		sender.send(events);
+		awaitReceived(events.size());
+		assertEquals(events, received);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsForeignPackets() throws Exception {
+		byte[] data = "hello, world".getBytes("UTF-8");
+		UdpInvalidationTransport.decode(data, data.length);
+	}
+}
@@ -0,0 +1,196 @@
+package com.jumbletree.jdbcutils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class VersionTest {
+
+	@Entity
+	@Table(name = "doc")
+	public static class Doc {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "title") private String title;
+		@Version @Column(name = "version") private long version;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getTitle() {
+			return title;
+		}
+		public void setTitle(String title) {
+			this.title = title;
+		}
+		public long getVersion() {
+			return version;
+		}
+		public void setVersion(long version) {
+			this.version = version;
+		}
+	}
+
+	@Entity
+	@Table(name = "note")
+	public static class Note {
+		@Id @Column(name = "id") private int id;
+		@Column(name = "body") private String body;
+
+		public int getId() {
+			return id;
+		}
+		public void setId(int id) {
+			this.id = id;
+		}
+		public String getBody() {
+			return body;
+		}
+		public void setBody(String body) {
+			this.body = body;
+		}
+	}
+
+	private JdbcTemplate template;
+	private JDBCUtils utils;
+
+	@Before
+	public void setUp() {
+		template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:version" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+		template.execute("CREATE TABLE doc (id INT PRIMARY KEY, title VARCHAR(50), version BIGINT)");
+		template.execute("CREATE TABLE note (id INT PRIMARY KEY, body VARCHAR(50))");
+		utils = new JDBCUtils(template);
+		for (int i = 1; i <= 3; i++) {
+			Doc doc = new Doc();
+			doc.setId(i);
+			doc.setTitle("doc" + i);
+			utils.insert(doc);
+			Note note = new Note();
+			note.setId(i);
+			note.setBody("note" + i);
+			utils.insert(note);
+		}
+		ObjectCache.terminate();
+	}
+
+	@After
+	public void tearDown() {
+		template.execute("SHUTDOWN");
+		ObjectCache.terminate();
+	}
+
+	private long version(int id) {
+		return template.queryForObject("SELECT version FROM doc WHERE id = ?", Long.class, id);
+	}
+
+	/**
+	 * Moves the row on as another transaction would
+	 */
+	private void concurrentUpdate(int id) {
+		template.update("UPDATE doc SET version = version + 1 WHERE id = ?", id);
+	}
+
+	@Test
+	public void updateBumpsTheVersion() {
+		Doc doc = utils.get(Doc.class, 1);
+		assertEquals(0, doc.getVersion());
+		doc.setTitle("changed");
+		utils.update(doc);
+		assertEquals(1, doc.getVersion());
+		assertEquals(1, version(1));
+	}
+
+	@Test
+	public void updateOfAStaleObjectThrows() {
+		Doc doc = utils.get(Doc.class, 1);
+		concurrentUpdate(1);
+		doc.setTitle("lost");
+		try {
+			utils.update(doc);
+			fail();
+		} catch (StaleEntityException e) {
+			assertSame(doc, e.getEntity());
+			assertEquals(1, e.getId());
+		}
+		assertEquals("doc1", template.queryForObject("SELECT title FROM doc WHERE id = 1", String.class));
+	}
+
+	@Test(expected = StaleEntityException.class)
+	public void deleteOfAStaleObjectThrows() {
+		Doc doc = utils.get(Doc.class, 1);
+		concurrentUpdate(1);
+		utils.delete(doc);
+	}
+
+	@Test
+	public void updateWithRetryReappliesTheChange() {
+		concurrentUpdate(2);
+		Doc doc = utils.updateWithRetry(Doc.class, 2, d -> d.setTitle(d.getTitle() + "!"), 3);
+		assertEquals("doc2!", doc.getTitle());
+		assertEquals(2, version(2));
+	}
+
+	@Test
+	public void updateAllWritesTheFreshRowsBeforeReportingAStaleOne() {
+		Doc first = utils.get(Doc.class, 1);
+		Doc second = utils.get(Doc.class, 2);
+		Doc third = utils.get(Doc.class, 3);
+		concurrentUpdate(2);
+		try {
+			utils.updateAll(Arrays.asList(first, second, third));
+			fail();
+		} catch (StaleEntityException e) {
+			assertSame(second, e.getEntity());
+		}
+		assertEquals(1, first.getVersion());
+		assertEquals(0, second.getVersion());
+		assertEquals(1, third.getVersion());
+		assertEquals(1, version(1));
+		assertEquals(1, version(3));
+	}
+
+	@Test
+	public void updateAllUpdatesARepeatedObjectOnce() {
+		Doc doc = utils.get(Doc.class, 1);
+		Doc other = utils.get(Doc.class, 2);
+		doc.setTitle("twice");
+		assertArrayEquals(new int[] { 1, 1, 1 }, utils.updateAll(Arrays.asList(doc, other, doc)));
+		assertEquals(1, doc.getVersion());
+		assertEquals(1, version(1));
+		assertEquals("twice", template.queryForObject("SELECT title FROM doc WHERE id = 1", String.class));
+	}
+
+	@Test
+	public void updateAllReportsCountsForRepeatedUnversionedObjects() {
+		Note note = utils.get(Note.class, 1);
+		Note missing = new Note();
+		missing.setId(99);
+		assertArrayEquals(new int[] { 1, 0, 1 }, utils.updateAll(Arrays.asList(note, missing, note)));
+	}
+
+	@Test
+	public void deleteAllDeletesARepeatedObjectOnce() {
+		Doc doc = utils.get(Doc.class, 1);
+		assertEquals(1, utils.deleteAll(Arrays.asList(doc, doc)));
+		ObjectCache.terminate();
+		assertFalse(utils.find(Doc.class, 1).isPresent());
+	}
+}
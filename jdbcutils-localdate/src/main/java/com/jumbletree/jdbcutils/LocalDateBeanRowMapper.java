@@ -18,14 +18,14 @@ public class LocalDateBeanRowMapper<T> extends BeanRowMapper<T> implements RowMa
 	protected Handler<T> getExtensionHandler(Field field) {
 		Class<?> type = field.getType();
 		if (type.equals(LocalDate.class)) {
-			return (t, theMethod, rs, column) -> {
+			return (t, setter, rs, column) -> {
 				Date date = rs.getDate(column);
-				theMethod.invoke(t, date == null ? null : date.toLocalDate());
+				setter.set(t, date == null ? null : date.toLocalDate());
 			};
 		} else if (type.equals(LocalDateTime.class)) {
-			return (t, theMethod, rs, column) -> {
+			return (t, setter, rs, column) -> {
 				Timestamp timestamp = rs.getTimestamp(column);
-				theMethod.invoke(t, timestamp == null ? null : timestamp.toLocalDateTime());
+				setter.set(t, timestamp == null ? null : timestamp.toLocalDateTime());
 			};
 		}
 		return null;
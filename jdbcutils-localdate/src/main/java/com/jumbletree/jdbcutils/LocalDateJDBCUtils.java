@@ -17,7 +17,8 @@ public class LocalDateJDBCUtils extends JDBCUtils {
 	 * Creates a row mapper used to convert DB data to the object model.
 	 * @param clazz the class which is to be created
 	 */
-	public <T> RowMapper<T> getRowMapper(Class<T> clazz) {
+	@Override
+	protected <T> RowMapper<T> createRowMapper(Class<T> clazz) {
 		return new LocalDateBeanRowMapper<>(clazz, this);
 	}
 
@@ -13,7 +13,8 @@ import com.vividsolutions.jts.io.WKTReader;
 
 public class PostGISBeanRowMapper<T> extends BeanRowMapper<T> implements RowMapper<T> {
 
-	private WKTReader reader = new WKTReader();
+	//Mappers are shared between threads, and WKTReader is not thread safe
+	private static final ThreadLocal<WKTReader> readers = ThreadLocal.withInitial(WKTReader::new);
 	
 	public PostGISBeanRowMapper(Class<T> clazz, JDBCUtils utils) {
 		super(clazz, utils);
@@ -23,17 +24,17 @@ public class PostGISBeanRowMapper<T> extends BeanRowMapper<T> implements RowMapp
 	protected Handler<T> getExtensionHandler(Field field) {
 		Class<?> type = field.getType();
 		if (org.postgis.Geometry.class.isAssignableFrom(type) || Geometry.class.isAssignableFrom(type)) {
-			return (t, theMethod, rs, column) -> {
+			return (t, setter, rs, column) -> {
 				PGgeometry geom = (PGgeometry)rs.getObject(column);
 				if (Geometry.class.isAssignableFrom(type)) {
 					StringBuffer buffer = new StringBuffer();
 					geom.getGeometry().outerWKT(buffer);
 	
 					try {
-						Geometry jtsgeom = reader.read(buffer.toString());
+						Geometry jtsgeom = readers.get().read(buffer.toString());
 						jtsgeom.setSRID(geom.getGeometry().getSrid());
 						
-						theMethod.invoke(t, jtsgeom);
+						setter.set(t, jtsgeom);
 					} catch (ParseException e) {
 						//Not possible, so long as postgis and jts both work
 						Logger.getLogger(getClass().getName()).log(Level.SEVERE, "Error creating geometry", e);
@@ -43,7 +44,7 @@ public class PostGISBeanRowMapper<T> extends BeanRowMapper<T> implements RowMapp
 						throw e;
 					}
 				} else {
-					theMethod.invoke(t, geom.getGeometry());
+					setter.set(t, geom.getGeometry());
 				}
 			};
 		}
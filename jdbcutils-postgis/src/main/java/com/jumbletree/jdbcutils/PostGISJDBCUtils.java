@@ -25,7 +25,8 @@ public class PostGISJDBCUtils extends JDBCUtils {
 	 * Creates a row mapper used to convert DB data to the object model.
 	 * @param clazz the class which is to be created
 	 */
-	public <T> RowMapper<T> getRowMapper(Class<T> clazz) {
+	@Override
+	protected <T> RowMapper<T> createRowMapper(Class<T> clazz) {
 		return new PostGISBeanRowMapper<>(clazz, this);
 	}
 